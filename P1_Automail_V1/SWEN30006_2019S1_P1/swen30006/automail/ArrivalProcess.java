@@ -0,0 +1,249 @@
+package automail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Decides how many mail items turn up at the mailroom on a given tick. Used
+ * by the continuous mode of the MailGenerator, where mail keeps arriving for
+ * as long as the simulation runs instead of being generated up front.
+ *
+ * Processes are asked once a tick, in order, and draw only from the
+ * generator's random source, so a seed always gives the same arrivals. They
+ * add up with sum, e.g. a daily schedule with a courier drop on top.
+ */
+public abstract class ArrivalProcess {
+
+	/**
+	 * @param time the current time
+	 * @return the mean number of arrivals expected at this time
+	 */
+	public abstract double rate(long time);
+
+	/**
+	 * Draw the number of mail items arriving at this time
+	 * @param time the current time
+	 * @param random source of randomness, owned by the generator
+	 * @return how many items arrive
+	 */
+	public int arrivals(long time, Random random) {
+		return samplePoisson(rate(time), random);
+	}
+
+	/**
+	 * Arrivals at a constant mean rate per tick
+	 * @param rate mean arrivals per tick
+	 */
+	public static ArrivalProcess poisson(final double rate) {
+		return new ArrivalProcess() {
+			@Override
+			public double rate(long time) {
+				return rate;
+			}
+		};
+	}
+
+	/**
+	 * Arrivals following a daily cycle around a mean rate, peaking a quarter
+	 * of the way through each period.
+	 * @param rate mean arrivals per tick over a whole period
+	 * @param period length of one day in ticks
+	 * @param amplitude relative swing of the rate, from 0 (flat) to 1
+	 */
+	public static ArrivalProcess diurnal(final double rate, final int period,
+		final double amplitude) {
+		return new ArrivalProcess() {
+			@Override
+			public double rate(long time) {
+				double phase = 2 * Math.PI * (time % period) / period;
+				return rate * (1 + amplitude * Math.sin(phase));
+			}
+		};
+	}
+
+	/**
+	 * Arrivals at a rate set for each part of a repeating period, such as a
+	 * morning rush in a day
+	 * @param starts tick in the period each part starts from, ascending and
+	 * 	the first 0
+	 * @param rates mean arrivals per tick in each part
+	 * @param period length of one period in ticks
+	 */
+	public static ArrivalProcess schedule(final long[] starts,
+		final double[] rates, final int period) {
+		return new ArrivalProcess() {
+			@Override
+			public double rate(long time) {
+				return rates[Segments.find(starts, time % period)];
+			}
+		};
+	}
+
+	/**
+	 * Arrivals that come in bursts: none between bursts and a high rate
+	 * during one. Bursts and the gaps between them last a random number of
+	 * ticks, exponentially distributed around their means.
+	 * @param rate mean arrivals per tick during a burst
+	 * @param length mean ticks a burst lasts
+	 * @param gap mean ticks between bursts
+	 */
+	public static ArrivalProcess bursty(final double rate, final double length,
+		final double gap) {
+		return new ArrivalProcess() {
+			private boolean bursting = false;
+			/** The tick the current burst or gap ends, -1 before the first */
+			private long until = -1;
+
+			@Override
+			public double rate(long time) {
+				return bursting ? rate : 0;
+			}
+
+			@Override
+			public int arrivals(long time, Random random) {
+				while (time >= until) {
+					// the first gap starts at the first tick asked
+					if (until < 0) {
+						until = time;
+					} else {
+						bursting = !bursting;
+					}
+					double mean = bursting ? length : gap;
+					until += 1 + (long) (-mean * Math.log(1 - random.nextDouble()));
+				}
+				return super.arrivals(time, random);
+			}
+		};
+	}
+
+	/**
+	 * A number of items arriving together at the same tick of each period,
+	 * as a courier dropping off a van load
+	 * @param size items in each drop
+	 * @param period ticks from one drop to the next
+	 * @param offset tick in the period of each drop
+	 */
+	public static ArrivalProcess drops(final int size, final int period,
+		final int offset) {
+		return new ArrivalProcess() {
+			@Override
+			public double rate(long time) {
+				return (double) size / period;
+			}
+
+			@Override
+			public int arrivals(long time, Random random) {
+				return time % period == offset ? size : 0;
+			}
+		};
+	}
+
+	/**
+	 * Arrivals at the ticks of a recorded trace, once through. A trace is a
+	 * text file of lines "tick" or "tick count", in tick order, a tick alone
+	 * counting one item; blank lines and lines from # are skipped.
+	 */
+	public static ArrivalProcess replay(Path trace) throws IOException {
+		List<String> lines = Files.readAllLines(trace);
+		final long[] ticks = new long[lines.size()];
+		final int[] counts = new int[lines.size()];
+		int rows = 0;
+		for (String line : lines) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			String[] fields = line.split("[\\s,]+");
+			ticks[rows] = Long.parseLong(fields[0]);
+			counts[rows] = fields.length > 1 ? Integer.parseInt(fields[1]) : 1;
+			if (rows > 0 && ticks[rows] < ticks[rows - 1]) {
+				throw new IllegalArgumentException(
+					"Replay trace is not in tick order at " + line);
+			}
+			rows++;
+		}
+		final int size = rows;
+		final long last = size == 0 ? 1 : Math.max(1, ticks[size - 1]);
+		long total = 0;
+		for (int row = 0; row < size; row++) {
+			total += counts[row];
+		}
+		final double mean = (double) total / last;
+		return new ArrivalProcess() {
+			/** The first row not yet replayed */
+			private int next = 0;
+
+			@Override
+			public double rate(long time) {
+				return time > last ? 0 : mean;
+			}
+
+			@Override
+			public int arrivals(long time, Random random) {
+				int n = 0;
+				// rows for ticks already past, a trace starting at 0, are
+				// replayed at once
+				while (next < size && ticks[next] <= time) {
+					n += counts[next++];
+				}
+				return n;
+			}
+		};
+	}
+
+	/**
+	 * @return arrivals of all the processes together, each drawn in turn
+	 */
+	public static ArrivalProcess sum(final List<ArrivalProcess> processes) {
+		if (processes.size() == 1) {
+			return processes.get(0);
+		}
+		final ArrivalProcess[] parts = processes.toArray(
+			new ArrivalProcess[0]);
+		return new ArrivalProcess() {
+			@Override
+			public double rate(long time) {
+				double rate = 0;
+				for (ArrivalProcess part : parts) {
+					rate += part.rate(time);
+				}
+				return rate;
+			}
+
+			@Override
+			public int arrivals(long time, Random random) {
+				int n = 0;
+				for (ArrivalProcess part : parts) {
+					n += part.arrivals(time, random);
+				}
+				return n;
+			}
+		};
+	}
+
+	/**
+	 * @return a Poisson distributed count with the given mean
+	 */
+	static int samplePoisson(double mean, Random random) {
+		if (mean <= 0) {
+			return 0;
+		}
+		// Knuth's method is linear in the mean, large means use the normal
+		// approximation instead
+		if (mean > 30) {
+			long n = Math.round(mean + Math.sqrt(mean) * random.nextGaussian());
+			return n < 0 ? 0 : (int) n;
+		}
+		double limit = Math.exp(-mean);
+		double product = random.nextDouble();
+		int n = 0;
+		while (product > limit) {
+			n++;
+			product *= random.nextDouble();
+		}
+		return n;
+	}
+}
@@ -2,17 +2,53 @@ package automail;
 
 public class Clock {
 	
+	/**
+	 * The clock of the simulation running on this thread, so several
+	 * simulations can run side by side in one JVM
+	 */
+	private static final ThreadLocal<Clock> current =
+		ThreadLocal.withInitial(Clock::new);
+
 	/** Represents the current time **/
-    private static int Time = 0;
+    private long time = 0;
     
     /** The threshold for the latest time for mail to arrive **/
     public static int LAST_DELIVERY_TIME;
 
-    public static int Time() {
-    	return Time;
+    public static long Time() {
+    	return current.get().now();
     }
     
     public static void Tick() {
-    	Time++;
+    	current.get().advance();
+    }
+
+    /**
+     * Start the time again from zero for a new simulation on this thread
+     */
+    public static void reset() {
+    	current.set(new Clock());
+    }
+
+    /**
+     * Take the time of the simulation on this thread from another clock,
+     * until the next reset
+     */
+    public static void use(Clock clock) {
+    	current.set(clock);
+    }
+
+    /**
+     * @return the current time, counted in steps of the simulation loop
+     */
+    protected long now() {
+    	return time;
+    }
+
+    /**
+     * Move on to the next time step
+     */
+    protected void advance() {
+    	time++;
     }
 }
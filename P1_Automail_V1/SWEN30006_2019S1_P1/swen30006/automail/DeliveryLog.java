@@ -0,0 +1,254 @@
+package automail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Every delivery of a run in a binary file, one column per field, for
+ * analysis of long runs without printing and parsing text.
+ *
+ * The file is a header of MAGIC and VERSION, then blocks of up to
+ * BLOCK_ROWS deliveries. A block is its number of rows and four bytes of
+ * padding, then each column in turn for all its rows, little endian:
+ *
+ *   arrival    long    tick the item arrived
+ *   score      double  what the delivery added to the score
+ *   id         int     the mail item's sequence number, as in its id
+ *   latency    int     ticks from arrival to delivery
+ *   robot0-2   int     sequence numbers of the robots delivering, -1 for
+ *                      none, only a team has more than one
+ *   floor      short
+ *   weight     byte    0 for one robot, 1 for a pair, 2 for three
+ *   priority   byte    priority level, 0 for ordinary mail
+ *
+ * Blocks are written whole through a file channel, and read by mapping one
+ * block at a time, touching only the columns a query uses.
+ */
+public class DeliveryLog implements AutoCloseable {
+
+	public static final int MAGIC = 0x414d444c;
+	public static final int VERSION = 1;
+	public static final int BLOCK_ROWS = 1 << 16;
+	private static final int HEADER_BYTES = 8;
+	private static final int BLOCK_HEADER_BYTES = 8;
+	/** Bytes of each column per row, in file order */
+	private static final int[] WIDTHS = {8, 8, 4, 4, 4, 4, 4, 2, 1, 1};
+	private static final int ARRIVAL = 0, SCORE = 1, ID = 2, LATENCY = 3,
+		ROBOT0 = 4, FLOOR = 7, WEIGHT = 8, PRIORITY = 9;
+
+	private final FileChannel channel;
+	private final ByteBuffer header = ByteBuffer.allocateDirect(
+		BLOCK_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+	private final ByteBuffer[] columns = new ByteBuffer[WIDTHS.length];
+	private final ByteBuffer[] block = new ByteBuffer[WIDTHS.length + 1];
+	private int rows = 0;
+	private long written = 0;
+
+	/**
+	 * Start a new file, replacing any there
+	 */
+	public DeliveryLog(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE,
+			StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		for (int column = 0; column < WIDTHS.length; column++) {
+			columns[column] = ByteBuffer.allocateDirect(
+				BLOCK_ROWS * WIDTHS[column]).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		ByteBuffer fileHeader = ByteBuffer.allocate(HEADER_BYTES)
+			.order(ByteOrder.LITTLE_ENDIAN).putInt(MAGIC).putInt(VERSION);
+		fileHeader.flip();
+		while (fileHeader.hasRemaining()) {
+			channel.write(fileHeader);
+		}
+	}
+
+	/**
+	 * @param robots the robots that delivered the item, up to three, null
+	 * 	where not known
+	 */
+	public void record(MailItem mailItem, List<Robot> robots, long latency,
+		double score) throws IOException {
+		assert(robots.size() <= 3);
+		columns[ARRIVAL].putLong(mailItem.getArrivalTime());
+		columns[SCORE].putDouble(score);
+		columns[ID].putInt(mailItem.hashCode());
+		columns[LATENCY].putInt((int) latency);
+		for (int i = 0; i < 3; i++) {
+			Robot robot = i < robots.size() ? robots.get(i) : null;
+			columns[ROBOT0 + i].putInt(robot == null ? -1 : robot.hashCode());
+		}
+		columns[FLOOR].putShort((short) mailItem.getDestFloor());
+		columns[WEIGHT].put((byte) weightClass(mailItem.getWeight()));
+		columns[PRIORITY].put((byte) (mailItem instanceof PriorityMailItem ?
+			((PriorityMailItem) mailItem).getPriorityLevel() : 0));
+		if (++rows == BLOCK_ROWS) {
+			flush();
+		}
+	}
+
+	/**
+	 * @return 0 for an item one robot carries, 1 for a pair, 2 for three
+	 */
+	public static int weightClass(int weight) {
+		return weight > Robot.PAIR_MAX_WEIGHT ? 2 :
+			weight > Robot.INDIVIDUAL_MAX_WEIGHT ? 1 : 0;
+	}
+
+	/**
+	 * Write the rows held as one block
+	 */
+	private void flush() throws IOException {
+		if (rows == 0) {
+			return;
+		}
+		header.clear();
+		header.putInt(rows).putInt(0).flip();
+		block[0] = header;
+		for (int column = 0; column < WIDTHS.length; column++) {
+			columns[column].flip();
+			block[column + 1] = columns[column];
+		}
+		long bytes = BLOCK_HEADER_BYTES + (long) rows * rowBytes();
+		long done = 0;
+		while (done < bytes) {
+			done += channel.write(block);
+		}
+		for (ByteBuffer column : columns) {
+			column.clear();
+		}
+		written += rows;
+		rows = 0;
+	}
+
+	private static int rowBytes() {
+		int bytes = 0;
+		for (int width : WIDTHS) {
+			bytes += width;
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return the deliveries recorded so far
+	 */
+	public long getRows() {
+		return written + rows;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * One block of a file, mapped into memory
+	 */
+	public static class Block {
+		private final MappedByteBuffer buffer;
+		private final int rows;
+		private final int[] offsets = new int[WIDTHS.length];
+
+		private Block(MappedByteBuffer buffer, int rows) {
+			this.buffer = buffer;
+			this.rows = rows;
+			int offset = BLOCK_HEADER_BYTES;
+			for (int column = 0; column < WIDTHS.length; column++) {
+				offsets[column] = offset;
+				offset += rows * WIDTHS[column];
+			}
+		}
+
+		public int rows() {
+			return rows;
+		}
+
+		public long arrival(int row) {
+			return buffer.getLong(offsets[ARRIVAL] + 8 * row);
+		}
+
+		public double score(int row) {
+			return buffer.getDouble(offsets[SCORE] + 8 * row);
+		}
+
+		public int id(int row) {
+			return buffer.getInt(offsets[ID] + 4 * row);
+		}
+
+		public int latency(int row) {
+			return buffer.getInt(offsets[LATENCY] + 4 * row);
+		}
+
+		public long delivered(int row) {
+			return arrival(row) + latency(row);
+		}
+
+		/**
+		 * @param member 0 to 2
+		 * @return the robot, -1 if the team was smaller
+		 */
+		public int robot(int row, int member) {
+			return buffer.getInt(offsets[ROBOT0 + member] + 4 * row);
+		}
+
+		public int floor(int row) {
+			return buffer.getShort(offsets[FLOOR] + 2 * row);
+		}
+
+		public int weightClass(int row) {
+			return buffer.get(offsets[WEIGHT] + row);
+		}
+
+		public int priority(int row) {
+			return buffer.get(offsets[PRIORITY] + row);
+		}
+	}
+
+	/**
+	 * Map each block of a file in turn
+	 */
+	public static void read(Path file, Consumer<Block> reader)
+		throws IOException {
+		try (FileChannel channel = FileChannel.open(file,
+			StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+				.order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, header, 0);
+			if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+				throw new IOException(file + " is not a delivery log");
+			}
+			long position = HEADER_BYTES;
+			long size = channel.size();
+			while (position < size) {
+				header.clear();
+				readFully(channel, header, position);
+				int rows = header.getInt(0);
+				long bytes = BLOCK_HEADER_BYTES + (long) rows * rowBytes();
+				MappedByteBuffer buffer = channel.map(
+					FileChannel.MapMode.READ_ONLY, position, bytes);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				reader.accept(new Block(buffer, rows));
+				position += bytes;
+			}
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer,
+		long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Delivery log ends inside a block");
+			}
+		}
+	}
+}
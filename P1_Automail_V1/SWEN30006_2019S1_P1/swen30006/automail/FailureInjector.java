@@ -0,0 +1,151 @@
+package automail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Takes robots out of service during the simulation, and keeps count of the
+ * mail items delayed by it. Robots can break down at random, be pulled for
+ * maintenance in turn at a fixed interval, or be taken out by events given
+ * up front.
+ */
+public class FailureInjector {
+
+	/** Chance of each robot in service breaking down on a tick */
+	private final double failureRate;
+	/** Ticks a broken down robot is out of service */
+	private final int repairTime;
+	/** Ticks between two robots being pulled for maintenance, 0 for never */
+	private final int maintenanceInterval;
+	/** Ticks a robot is out of service for maintenance */
+	private final int maintenanceTime;
+	/** Events given up front, robot and ticks out of service by time */
+	private final TreeMap<Long, List<int[]>> events =
+		new TreeMap<Long, List<int[]>>();
+
+	private final Robot[] robots;
+	private final Random random;
+	private int nextMaintenance = 0;
+
+	/** Items given back to the pool and not delivered yet */
+	private final Set<MailItem> delayed = new HashSet<MailItem>();
+	private int failures = 0;
+	private int maintenances = 0;
+	private long itemsDelayed = 0;
+	private long delayedDelivered = 0;
+	private long delayedLatency = 0;
+	private double delayedScore = 0;
+
+	/**
+	 * @param robots the robots that can be taken out of service
+	 * @param failureRate chance of each robot breaking down on a tick
+	 * @param repairTime ticks a broken down robot is out of service
+	 * @param maintenanceInterval ticks between maintenance, 0 for never
+	 * @param maintenanceTime ticks a robot is out for maintenance
+	 * @param seed keeps failures repeatable, independently of the mail
+	 */
+	public FailureInjector(Robot[] robots, double failureRate, int repairTime,
+		int maintenanceInterval, int maintenanceTime, long seed) {
+		this.robots = robots;
+		this.failureRate = failureRate;
+		this.repairTime = repairTime;
+		this.maintenanceInterval = maintenanceInterval;
+		this.maintenanceTime = maintenanceTime;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Take a robot out of service at a given time
+	 * @param time when it happens
+	 * @param robot index of the robot
+	 * @param duration ticks it is out of service
+	 */
+	public void schedule(long time, int robot, int duration) {
+		assert(robot >= 0 && robot < robots.length && duration > 0);
+		List<int[]> atTime = events.get(time);
+		if (atTime == null) {
+			atTime = new ArrayList<int[]>();
+			events.put(time, atTime);
+		}
+		atTime.add(new int[] {robot, duration});
+	}
+
+	/**
+	 * Parse events written as time:robot:duration separated by commas
+	 */
+	public void schedule(String eventList) {
+		for (String event : eventList.split(",")) {
+			if (event.trim().isEmpty()) {
+				continue;
+			}
+			String[] fields = event.trim().split(":");
+			schedule(Long.parseLong(fields[0]), Integer.parseInt(fields[1]),
+				Integer.parseInt(fields[2]));
+		}
+	}
+
+	/**
+	 * Called on every time step before the mail pool loads robots
+	 */
+	public void step() {
+		List<int[]> atTime = events.remove(Clock.Time());
+		if (atTime != null) {
+			for (int[] event : atTime) {
+				takeOut(robots[event[0]], event[1]);
+				failures++;
+			}
+		}
+		if (failureRate > 0) {
+			for (Robot robot : robots) {
+				if (!robot.isOutOfService() &&
+					random.nextDouble() < failureRate) {
+					takeOut(robot, repairTime);
+					failures++;
+				}
+			}
+		}
+		if (maintenanceInterval > 0 && Clock.Time() > 0 &&
+			Clock.Time() % maintenanceInterval == 0) {
+			takeOut(robots[nextMaintenance], maintenanceTime);
+			nextMaintenance = (nextMaintenance + 1) % robots.length;
+			maintenances++;
+		}
+	}
+
+	private void takeOut(Robot robot, int duration) {
+		if (Simulation.VERBOSE) {
+			System.out.printf("T: %3d > %7s out of service for %d%n",
+				Clock.Time(), robot.getIdTube(), duration);
+		}
+		for (MailItem mailItem : robot.takeOutOfService(duration)) {
+			if (delayed.add(mailItem)) {
+				itemsDelayed++;
+			}
+		}
+	}
+
+	/**
+	 * Called for every delivery, counts the ones delayed by a robot going
+	 * out of service
+	 */
+	public void recordDelivery(MailItem mailItem, long latency, double score) {
+		if (delayed.remove(mailItem)) {
+			delayedDelivered++;
+			delayedLatency += latency;
+			delayedScore += score;
+		}
+	}
+
+	public void printResults() {
+		System.out.printf("Breakdowns: %d | Maintenance: %d%n",
+			failures, maintenances);
+		System.out.printf("Items delayed by failures: %d | delivered: %d"
+			+ " | mean latency: %.1f | score: %.2f%n", itemsDelayed,
+			delayedDelivered, delayedDelivered == 0 ? 0 :
+			(double) delayedLatency / delayedDelivered, delayedScore);
+	}
+}
@@ -11,5 +11,14 @@ public interface IMailDelivery {
      * @param mailItem the mail item being delivered.
      */
 	void deliver(MailItem mailItem);
+
+	/**
+	 * Delivers an item at its floor, for those that track which robot did
+	 * @param mailItem the mail item being delivered.
+	 * @param robot the robot delivering it, one of a team for a heavier item
+	 */
+	default void deliver(MailItem mailItem, Robot robot) {
+		deliver(mailItem);
+	}
     
 }
\ No newline at end of file
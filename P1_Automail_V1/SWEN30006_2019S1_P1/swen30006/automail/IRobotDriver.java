@@ -0,0 +1,18 @@
+package automail;
+
+/**
+ * Moves robots that are driven from outside the simulation, such as robots
+ * in a real building or stand-ins for them, instead of one floor per step.
+ * A driven robot is told it has reached the floor with Robot.arrived.
+ */
+public interface IRobotDriver {
+
+	/**
+	 * Send a robot to a floor
+	 * @param robot the robot to move
+	 * @param floor where it goes, the mailroom when returning
+	 * @param ticksPerFloor how long it takes for each floor, longer for a
+	 * 	team carrying a heavier item
+	 */
+	void moveTo(Robot robot, int floor, int ticksPerFloor);
+}
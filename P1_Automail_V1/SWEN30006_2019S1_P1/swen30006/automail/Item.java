@@ -1,10 +1,6 @@
 package automail;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import exceptions.ItemAllocationException;
-import exceptions.ItemTooHeavyException;
 
 public class Item {
 		private int priority;
@@ -12,26 +8,29 @@ public class Item {
 		private MailItem mailItem;
 		// represent the num of robots this mailItem needs
 		private int numOfNeededRobots;
-		private List<Robot> acquiredRobots;
+		/** Robots acquired so far, the first acquired of the array */
+		private Robot[] acquiredRobots;
+		private int acquired = 0;
 		private boolean heavierMark;
 		// Use stable sort to keep arrival time relative positions
 		
-		public Item(MailItem mailItem) throws ItemTooHeavyException {
+		/**
+		 * @param mailItem mail let in by admission, never a rejected class
+		 */
+		public Item(MailItem mailItem) {
 			priority = (mailItem instanceof PriorityMailItem) ?
 				((PriorityMailItem) mailItem).getPriorityLevel() : 1;
 			destination = mailItem.getDestFloor();
 			this.mailItem = mailItem;
-			if (mailItem.getWeight() <= Robot.INDIVIDUAL_MAX_WEIGHT) {
-				heavierMark = false;
-				numOfNeededRobots = 1;
-			} else if (mailItem.getWeight() <= Robot.TRIPLE_MAX_WEIGHT) {
-				heavierMark = true;
-				numOfNeededRobots = 
-					mailItem.getWeight() > Robot.PAIR_MAX_WEIGHT ? 3:2;
-			} else {
-				throw new ItemTooHeavyException();
+			MailClass mailClass = MailClass.of(mailItem);
+			if (mailClass.isRejected()) {
+				throw new IllegalArgumentException(mailClass + " mail in the pool: "
+					+ mailItem);
 			}
-			acquiredRobots = new ArrayList<Robot>();
+			numOfNeededRobots = mailClass.robots;
+			heavierMark = numOfNeededRobots > 1;
+			// room for one robot too many, which robotAdd turns away
+			acquiredRobots = new Robot[numOfNeededRobots + 1];
 		}
 		
 		public int getPriority() {
@@ -51,7 +50,7 @@ public class Item {
 		}
 		
 		public int getCurrentNumAcquiredRobots() {
-			return acquiredRobots.size();
+			return acquired;
 		}
 		
 		public MailItem getMailItem() {
@@ -59,16 +58,21 @@ public class Item {
 		}
 		
 		public void robotAdd(Robot robot) throws ItemAllocationException  {
-			if (acquiredRobots.contains(robot)) {
+			if (indexOf(robot) >= 0) {
+				SimulationEvents.allocationFailure(robot, mailItem,
+					"already in the team");
 				throw new ItemAllocationException();
 			} else {
-				acquiredRobots.add(robot);
+				acquiredRobots[acquired++] = robot;
 				if (heavierMark == true) {
-					System.out.printf("T: %3d > %7s joins the team to delivery [%s]%n",
-						Clock.Time(), robot.getIdTube(),mailItem.toString());
+					robot.joinTeam(this);
+					if (Simulation.VERBOSE) {
+						System.out.printf("T: %3d > %7s joins the team to delivery [%s]%n",
+							Clock.Time(), robot.getIdTube(),mailItem.toString());
+					}
 					int numOfStillNeeding = 
-						numOfNeededRobots - acquiredRobots.size();
-					if (numOfStillNeeding > 0) {
+						numOfNeededRobots - acquired;
+					if (numOfStillNeeding > 0 && Simulation.VERBOSE) {
 						System.out.printf(
 								"T: %3d > Heavier mail item(ID:%s) still needs %d extra robots to delivery.%n",
 								Clock.Time(), mailItem.getId(), 
@@ -76,19 +80,82 @@ public class Item {
 					}
 					if (numOfStillNeeding < 0) {
 						acquiredRobotsDispatch();
+						SimulationEvents.allocationFailure(robot, mailItem,
+							"team already full");
 						throw new ItemAllocationException();
 					}
 				}
 			}
 		}
 		
+		/**
+		 * A robot of a team still forming in the mailroom has gone out of
+		 * service, the team carries on without it.
+		 * @return whether the robot was in the team
+		 */
+		public boolean robotRemove(Robot robot) {
+			int index = indexOf(robot);
+			if (index < 0) {
+				return false;
+			}
+			System.arraycopy(acquiredRobots, index + 1, acquiredRobots, index,
+				acquired - index - 1);
+			acquiredRobots[--acquired] = null;
+			return true;
+		}
+		
+		private int indexOf(Robot robot) {
+			for (int i = 0; i < acquired; i++) {
+				if (acquiredRobots[i] == robot) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		
+		/**
+		 * Take the robot that joined last out of a team still forming in
+		 * the mailroom, so it can deliver something more urgent.
+		 * @param wait whether the robot registers as waiting again, false
+		 * 	when the caller loads it straight away
+		 * @return the robot, free to be loaded again, or null if none joined
+		 */
+		public Robot releaseRobot(boolean wait) {
+			if (acquired == 0) {
+				return null;
+			}
+			Robot robot = acquiredRobots[--acquired];
+			acquiredRobots[acquired] = null;
+			robot.leaveTeam(wait);
+			return robot;
+		}
+		
+		/**
+		 * A member of the team has broken down on the way, so every other 
+		 * member drops the item and returns.
+		 */
+		public void dissolve() {
+			if (Simulation.VERBOSE) {
+				System.out.printf("T: %3d > Team for mail item(ID:%s) dissolved.%n",
+						Clock.Time(), mailItem.getId());
+			}
+			for (int i = 0; i < acquired; i++) {
+				acquiredRobots[i].leaveTeam();
+				acquiredRobots[i] = null;
+			}
+			acquired = 0;
+		}
+		
 		public void acquiredRobotsDispatch() {
-			if (heavierMark == true) {
+			if (heavierMark == true && Simulation.VERBOSE) {
 				System.out.printf("T: %3d > Heavier mail item(ID:%s) gets enough robots, robots as a team begin to dispatch.%n",
 						Clock.Time(), mailItem.getId());
+			}
+			if (heavierMark == true) {
+				SimulationEvents.teamFormed(mailItem, acquired);
 			}			
-			for(Robot robot:acquiredRobots) {
-				robot.dispatch();
+			for (int i = 0; i < acquired; i++) {
+				acquiredRobots[i].dispatch();
 			}
 		}
 	}
\ No newline at end of file
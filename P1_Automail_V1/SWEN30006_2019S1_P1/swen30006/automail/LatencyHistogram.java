@@ -0,0 +1,139 @@
+package automail;
+
+/**
+ * Histogram of delivery latencies in ticks. Latencies below SUB_BUCKETS are
+ * counted exactly, above that every power of two is split into SUB_BUCKETS/2
+ * buckets, so the relative error stays under 2/SUB_BUCKETS with a fixed
+ * number of buckets whatever the range.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/** Enough buckets for any non negative long */
+	private static final int BUCKETS =
+		SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * (SUB_BUCKETS / 2);
+
+	private final long[] counts = new long[BUCKETS];
+	private long count = 0;
+	private long sum = 0;
+	private long max = 0;
+
+	/**
+	 * @param latency ticks from arrival to delivery
+	 */
+	public void record(long latency) {
+		assert(latency >= 0);
+		counts[bucketOf(latency)]++;
+		count++;
+		sum += latency;
+		if (latency > max) {
+			max = latency;
+		}
+	}
+
+	/**
+	 * Add all the latencies recorded by another histogram
+	 */
+	public void merge(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		sum += other.sum;
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the smallest latency at or above the given percentile of
+	 * 	recorded latencies, 0 if none were recorded
+	 */
+	public long getPercentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(percentile / 100 * count);
+		if (rank < 1) {
+			rank = 1;
+		}
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(highestIn(i), max);
+			}
+		}
+		return max;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * @return the non empty buckets as "upper:count" pairs separated by
+	 * 	commas, the inverse of parse
+	 */
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < BUCKETS; i++) {
+			if (counts[i] != 0) {
+				if (text.length() > 0) {
+					text.append(',');
+				}
+				text.append(highestIn(i)).append(':').append(counts[i]);
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Rebuild a histogram written by toString. Bucket sums are restored
+	 * from the bucket upper bounds, so the mean is approximate.
+	 */
+	public static LatencyHistogram parse(String text) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		if (text.isEmpty()) {
+			return histogram;
+		}
+		for (String pair : text.split(",")) {
+			int colon = pair.indexOf(':');
+			long latency = Long.parseLong(pair.substring(0, colon));
+			long bucketCount = Long.parseLong(pair.substring(colon + 1));
+			histogram.counts[bucketOf(latency)] += bucketCount;
+			histogram.count += bucketCount;
+			histogram.sum += latency * bucketCount;
+			histogram.max = Math.max(histogram.max, latency);
+		}
+		return histogram;
+	}
+
+	private static int bucketOf(long latency) {
+		if (latency < SUB_BUCKETS) {
+			return (int) latency;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(latency);
+		int shift = magnitude - SUB_BUCKET_BITS + 1;
+		int sub = (int) (latency >>> shift) - SUB_BUCKETS / 2;
+		return SUB_BUCKETS + (shift - 1) * (SUB_BUCKETS / 2) + sub;
+	}
+
+	private static long highestIn(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = (bucket - SUB_BUCKETS) / (SUB_BUCKETS / 2) + 1;
+		long sub = (bucket - SUB_BUCKETS) % (SUB_BUCKETS / 2) + SUB_BUCKETS / 2;
+		return ((sub + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,57 @@
+package automail;
+
+/**
+ * What it takes to carry a mail item, decided from its floor and weight
+ * alone, so mail can be sorted as it arrives without building anything for
+ * it. The last three classes are mail no robots can deliver.
+ */
+public enum MailClass {
+	/** One robot, hand or tube */
+	LIGHT(1),
+	PAIR(2),
+	TRIPLE(3),
+	/** Heavier than three robots can carry */
+	OVERWEIGHT(0),
+	/** For a floor outside the building */
+	NO_SUCH_FLOOR(0),
+	/** Of no weight, or less */
+	NO_WEIGHT(0);
+
+	/** Robots needed to carry the item, 0 if it cannot be delivered */
+	public final int robots;
+
+	MailClass(int robots) {
+		this.robots = robots;
+	}
+
+	public boolean isRejected() {
+		return robots == 0;
+	}
+
+	public static MailClass of(MailItem mailItem) {
+		return of(mailItem.getDestFloor(), mailItem.getWeight());
+	}
+
+	public static MailClass of(int floor, int weight) {
+		if (floor < Building.LOWEST_FLOOR || floor > Building.FLOORS) {
+			return NO_SUCH_FLOOR;
+		}
+		return ofWeight(weight);
+	}
+
+	/**
+	 * @return the class of mail of this weight for a floor in the building
+	 */
+	public static MailClass ofWeight(int weight) {
+		if (weight <= 0) {
+			return NO_WEIGHT;
+		}
+		if (weight <= Robot.INDIVIDUAL_MAX_WEIGHT) {
+			return LIGHT;
+		}
+		if (weight <= Robot.PAIR_MAX_WEIGHT) {
+			return PAIR;
+		}
+		return weight <= Robot.TRIPLE_MAX_WEIGHT ? TRIPLE : OVERWEIGHT;
+	}
+}
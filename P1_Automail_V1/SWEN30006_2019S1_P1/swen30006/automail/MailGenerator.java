@@ -12,7 +12,7 @@ public class MailGenerator {
     public final int MAIL_TO_CREATE;
     public final int MAIL_MAX_WEIGHT;
     
-    private int mailCreated;
+    private long mailCreated;
 
     private final Random random;
     /** This seed is used to make the behaviour deterministic */
@@ -20,7 +20,11 @@ public class MailGenerator {
     private boolean complete;
     private IMailPool mailPool;
 
-    private Map<Integer,ArrayList<MailItem>> allMail;
+    private Map<Long,ArrayList<MailItem>> allMail;
+    /** Set in continuous mode, draws arrivals tick by tick */
+    private ArrivalProcess arrivalProcess = null;
+    /** Weights and priority share by time of day, null for the default */
+    private MailMix mailMix = null;
 
     /**
      * Constructor for mail generation
@@ -41,23 +45,70 @@ public class MailGenerator {
         MAIL_MAX_WEIGHT = mailMaxWeight;
         mailCreated = 0;
         complete = false;
-        allMail = new HashMap<Integer,ArrayList<MailItem>>();
+        allMail = new HashMap<Long,ArrayList<MailItem>>();
         this.mailPool = mailPool;
     }
 
+    /**
+     * Switch to continuous mode: no mail is generated up front, instead each
+     * step draws the arrivals for the current tick from the process.
+     * MAIL_TO_CREATE no longer bounds the run.
+     * @param arrivalProcess decides how much mail arrives on each tick
+     */
+    public void setArrivalProcess(ArrivalProcess arrivalProcess) {
+    	this.arrivalProcess = arrivalProcess;
+    }
+
+    /**
+     * @param mailMix weights and priority share of mail by when it arrives
+     */
+    public void setMailMix(MailMix mailMix) {
+    	this.mailMix = mailMix;
+    }
+
+    /**
+     * @return how many mail items have been created so far
+     */
+    public long getMailCreated() {
+    	return mailCreated;
+    }
+
     /**
      * @return a new mail item that needs to be delivered
      */
     private MailItem generateMail(){
-    	MailItem newMailItem;
         int dest_floor = generateDestinationFloor();
         int priority_level = generatePriorityLevel();
-        int arrival_time = generateArrivalTime();
-        int weight = generateWeight();
+        long arrival_time = generateArrivalTime();
+        int weight = generateWeight(arrival_time);
         // Check if arrival time has a priority mail
-        if(	(random.nextInt(6) > 0) ||  // Skew towards non priority mail
-        	(allMail.containsKey(arrival_time) &&
-        	allMail.get(arrival_time).stream().anyMatch(e -> PriorityMailItem.class.isInstance(e))))
+        boolean hasPriority = allMail.containsKey(arrival_time) &&
+        	allMail.get(arrival_time).stream().anyMatch(e -> PriorityMailItem.class.isInstance(e));
+        return createMail(dest_floor, arrival_time, weight, priority_level,
+        	hasPriority);
+    }
+
+    /**
+     * @return a new mail item arriving now, used in continuous mode
+     */
+    private MailItem generateMail(long arrival_time, boolean hasPriority){
+        int dest_floor = generateDestinationFloor();
+        int priority_level = generatePriorityLevel();
+        int weight = generateWeight(arrival_time);
+        return createMail(dest_floor, arrival_time, weight, priority_level,
+        	hasPriority);
+    }
+
+    /**
+     * @param hasPriority whether a priority item already arrives at this time,
+     * 	there is at most one per time step
+     */
+    private MailItem createMail(int dest_floor, long arrival_time, int weight,
+    	int priority_level, boolean hasPriority){
+    	MailItem newMailItem;
+        if(	(mailMix == null ? random.nextInt(6) > 0 : // Skew towards non priority mail
+        		!mailMix.isPriority(arrival_time, random)) ||
+        	hasPriority)
         {
         	newMailItem = new MailItem(dest_floor,arrival_time,weight);      	
         } else {
@@ -84,7 +135,10 @@ public class MailGenerator {
     /**
      * @return a random weight
      */
-    private int generateWeight(){
+    private int generateWeight(long arrival_time){
+    	if (mailMix != null) {
+    		return mailMix.weight(arrival_time, random, MAIL_MAX_WEIGHT);
+    	}
     	// grams for normal item
     	final double mean = 200.0;
     	// grams
@@ -108,7 +162,7 @@ public class MailGenerator {
     public void generateAllMail(){
         while(!complete){
             MailItem newMail =  generateMail();
-            int timeToDeliver = newMail.getArrivalTime();
+            long timeToDeliver = newMail.getArrivalTime();
             /** Check if key exists for this time **/
             if(allMail.containsKey(timeToDeliver)){
                 /** Add to existing array */
@@ -135,23 +189,66 @@ public class MailGenerator {
 
     }
     
+    /**
+     * @return the mail still to arrive, by arrival time
+     */
+    public List<MailItem> getAllMail(){
+        List<MailItem> mail = new ArrayList<MailItem>();
+        for (List<MailItem> atTime : allMail.values()) {
+            mail.addAll(atTime);
+        }
+        mail.sort(Comparator.comparingLong(MailItem::getArrivalTime));
+        return mail;
+    }
+    
     /**
      * While there are steps left, create a new mail item to deliver
      * @return Priority
      */
     public PriorityMailItem step(){
+    	if (arrivalProcess != null) {
+    		return stepContinuous();
+    	}
     	PriorityMailItem priority = null;
     	// Check if there are any mail to create
         if(this.allMail.containsKey(Clock.Time())){
             for(MailItem mailItem : allMail.get(Clock.Time())){
             	if (mailItem instanceof PriorityMailItem) priority =
             		((PriorityMailItem) mailItem);
-                System.out.printf("T: %3d > new addToPool [%s]%n",
-                	Clock.Time(), mailItem.toString());
+                if (Simulation.VERBOSE) {
+                	System.out.printf("T: %3d > new addToPool [%s]%n",
+                		Clock.Time(), mailItem.toString());
+                }
+                SimulationEvents.mailArrival(mailItem);
                 mailPool.addToPool(mailItem);
             }
+            // Delivered batches are never looked at again
+            allMail.remove(Clock.Time());
         }
         return priority;
     }
+
+    /**
+     * Continuous mode step, mail is made as it arrives and handed straight
+     * to the pool so nothing is kept once it has arrived.
+     * @return Priority
+     */
+    private PriorityMailItem stepContinuous(){
+    	PriorityMailItem priority = null;
+    	int arrivals = arrivalProcess.arrivals(Clock.Time(), random);
+    	for (int i = 0; i < arrivals; i++) {
+    		MailItem mailItem = generateMail(Clock.Time(), priority != null);
+    		if (mailItem instanceof PriorityMailItem) priority =
+    			((PriorityMailItem) mailItem);
+    		if (Simulation.VERBOSE) {
+    			System.out.printf("T: %3d > new addToPool [%s]%n",
+    				Clock.Time(), mailItem.toString());
+    		}
+    		SimulationEvents.mailArrival(mailItem);
+    		mailPool.addToPool(mailItem);
+    		mailCreated++;
+    	}
+    	return priority;
+    }
     
 }
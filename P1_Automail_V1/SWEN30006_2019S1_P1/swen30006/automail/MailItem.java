@@ -1,7 +1,6 @@
 package automail;
 
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // import java.util.UUID;
 
@@ -12,12 +11,12 @@ public class MailItem {
 	
     /** Represents the destination floor to which the mail is intended to go */
     protected final int destination_floor;
-    /** The mail identifier */
-    protected final String id;
     /** The time the mail item arrived */
-    protected final int arrival_time;
+    protected final long arrival_time;
     /** The weight in grams of the mail item */
     protected final int weight;
+    /** Set once the delivery has been reported, guards double delivery */
+    boolean delivered = false;
 
     /**
      * Constructor for a MailItem
@@ -25,9 +24,8 @@ public class MailItem {
      * @param arrival_time the time that the mail arrived
      * @param weight the weight of this mail item
      */
-    public MailItem(int dest_floor, int arrival_time, int weight){
+    public MailItem(int dest_floor, long arrival_time, int weight){
         this.destination_floor = dest_floor;
-        this.id = String.valueOf(hashCode());
         this.arrival_time = arrival_time;
         this.weight = weight;
     }
@@ -35,7 +33,7 @@ public class MailItem {
     @Override
     public String toString(){
         return String.format("Mail Item:: ID: %6s | Arrival: %4d | Destination: %2d | Weight: %4d",
-        	id, arrival_time, destination_floor, weight);
+        	getId(), arrival_time, destination_floor, weight);
     }
 
     /**
@@ -47,18 +45,18 @@ public class MailItem {
     }
     
     /**
-     *
+     * Made when asked for, as only printing and events need it
      * @return the ID of the mail item
      */
     public String getId() {
-        return id;
+        return String.valueOf(hashCode());
     }
 
     /**
      *
      * @return the arrival time of the mail item
      */
-    public int getArrivalTime(){
+    public long getArrivalTime(){
         return arrival_time;
     }
 
@@ -70,15 +68,18 @@ public class MailItem {
        return weight;
    }
    
-	static private int count = 0;
-	static private Map<Integer, Integer> hashMap = 
-		new TreeMap<Integer, Integer>();
+	static private final AtomicInteger count = new AtomicInteger();
+	/**
+	 * Sequence number taken at construction, shared by every simulation in
+	 * the JVM. Ids are unique and in creation order within a run, but only
+	 * start from 0 for the first run, so they are not the same from one run
+	 * of a seed to the next; neither are the id and robot columns of a
+	 * DeliveryLog.
+	 */
+	private final int hash = count.getAndIncrement();
 
 	@Override
 	public int hashCode() {
-		Integer hash0 = super.hashCode();
-		Integer hash = hashMap.get(hash0);
-		if (hash == null) { hash = count++; hashMap.put(hash0, hash); }
 		return hash;
 	}
 }
@@ -0,0 +1,62 @@
+package automail;
+
+import java.util.Random;
+
+/**
+ * The weights and share of priority mail arriving in each part of a
+ * repeating period, so a day can have a heavy parcel afternoon. Each part's
+ * setting is mean/spread/share: weights are the mean plus a half normal of
+ * the spread, in grams, as the generator draws them by default, and share
+ * is the fraction of items sent as priority mail. The default mix is
+ * 200/1000/0.1667 all day.
+ */
+public class MailMix {
+
+	private final long[] starts;
+	private final double[] means;
+	private final double[] spreads;
+	private final double[] shares;
+	private final int period;
+
+	/**
+	 * @param spec parts of the period as Segments reads them
+	 * @param period length of one period in ticks
+	 */
+	public MailMix(String spec, int period) {
+		Segments segments = new Segments(spec);
+		starts = segments.starts;
+		int parts = starts.length;
+		means = new double[parts];
+		spreads = new double[parts];
+		shares = new double[parts];
+		for (int i = 0; i < parts; i++) {
+			String[] fields = segments.values[i].split("/");
+			if (fields.length != 3) {
+				throw new IllegalArgumentException(
+					"Mail mix is mean/spread/share: " + segments.values[i]);
+			}
+			means[i] = Double.parseDouble(fields[0]);
+			spreads[i] = Double.parseDouble(fields[1]);
+			shares[i] = Double.parseDouble(fields[2]);
+		}
+		this.period = period;
+	}
+
+	/**
+	 * @return the weight of an item arriving at a time, at most maxWeight
+	 */
+	public int weight(long time, Random random, int maxWeight) {
+		int part = Segments.find(starts, time % period);
+		double base = random.nextGaussian();
+		if (base < 0) base = -base;
+		int weight = (int) (means[part] + base * spreads[part]);
+		return weight > maxWeight ? maxWeight : weight;
+	}
+
+	/**
+	 * @return whether an item arriving at a time is priority mail
+	 */
+	public boolean isPriority(long time, Random random) {
+		return random.nextDouble() < shares[Segments.find(starts, time % period)];
+	}
+}
@@ -0,0 +1,189 @@
+package automail;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Times the phases of each tick of the simulation loop. Phase times, and
+ * the bytes the thread allocates in each phase where the JVM counts them,
+ * are added up when Profile is set, and each phase is a TickPhase event
+ * when Flight_Events is set and a flight recording has it enabled,
+ * otherwise begin and end do nothing.
+ *
+ * Printing done with Verbose on counts in the phase that prints.
+ */
+public class PhaseTimer {
+
+	public enum Phase {
+		/** New mail handed to the pool */
+		GENERATE,
+		/** Priority arrivals changing the loads of robots */
+		PREEMPT,
+		/** Robots breaking down and being repaired */
+		FAILURES,
+		/** Loading and dispatching waiting robots */
+		MAIL_POOL,
+		/** Moving and delivering robots */
+		ROBOTS,
+		/** Windowed statistics, and printing them */
+		STATISTICS
+	}
+
+	private static final Phase[] PHASES = Phase.values();
+
+	private final boolean accumulate;
+	private final long[] nanos = new long[PHASES.length];
+	private final long[] bytes = new long[PHASES.length];
+	private long ticks = 0;
+	private Phase phase = null;
+	private long start;
+	/** Counts the bytes this thread allocates, null where it cannot */
+	private final com.sun.management.ThreadMXBean allocations;
+	/** Bytes allocated by reading the count itself */
+	private long readBytes = 0;
+	private long startBytes;
+	/** The event of the phase running, null when not recorded */
+	private SimulationEvents.TickPhase event = null;
+
+	/**
+	 * @param accumulate whether phase times are added up for printResults
+	 */
+	public PhaseTimer(boolean accumulate) {
+		this.accumulate = accumulate;
+		allocations = accumulate ? allocationCounter() : null;
+		if (allocations != null) {
+			long first = allocatedBytes();
+			readBytes = allocatedBytes() - first;
+		}
+	}
+
+	/**
+	 * @return bytes allocated so far by the thread running the simulation
+	 */
+	private long allocatedBytes() {
+		return allocations.getThreadAllocatedBytes(
+			Thread.currentThread().getId());
+	}
+
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		java.lang.management.ThreadMXBean threads =
+			ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+		com.sun.management.ThreadMXBean counter =
+			(com.sun.management.ThreadMXBean) threads;
+		if (!counter.isThreadAllocatedMemorySupported()) {
+			return null;
+		}
+		counter.setThreadAllocatedMemoryEnabled(true);
+		return counter;
+	}
+
+	/**
+	 * End the phase running, if any, and start the next
+	 */
+	public void begin(Phase next) {
+		end();
+		phase = next;
+		if (SimulationEvents.ENABLED) {
+			SimulationEvents.TickPhase nextEvent =
+				new SimulationEvents.TickPhase();
+			if (nextEvent.isEnabled()) {
+				nextEvent.tick = Clock.Time();
+				nextEvent.phase = next.name();
+				nextEvent.begin();
+				event = nextEvent;
+			}
+		}
+		if (accumulate) {
+			if (allocations != null) {
+				startBytes = allocatedBytes();
+			}
+			start = System.nanoTime();
+		}
+	}
+
+	/**
+	 * End the phase running, if any
+	 */
+	public void end() {
+		if (phase == null) {
+			return;
+		}
+		if (accumulate) {
+			nanos[phase.ordinal()] += System.nanoTime() - start;
+			if (allocations != null) {
+				bytes[phase.ordinal()] += allocatedBytes() - startBytes -
+					readBytes;
+			}
+			if (phase == Phase.STATISTICS) {
+				ticks++;
+			}
+		}
+		if (event != null) {
+			event.commit();
+			event = null;
+		}
+		phase = null;
+	}
+
+	public long getNanos(Phase phase) {
+		return nanos[phase.ordinal()];
+	}
+
+	/**
+	 * @return bytes allocated in the phase, 0 when not counted
+	 */
+	public long getBytes(Phase phase) {
+		return bytes[phase.ordinal()];
+	}
+
+	/**
+	 * @return whether allocated bytes are counted
+	 */
+	public boolean countsBytes() {
+		return allocations != null;
+	}
+
+	/**
+	 * @return ticks added up
+	 */
+	public long getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * Forget what has been added up so far, to leave out a warmup
+	 */
+	public void reset() {
+		Arrays.fill(nanos, 0);
+		Arrays.fill(bytes, 0);
+		ticks = 0;
+	}
+
+	/**
+	 * Print the time in each phase, if added up
+	 */
+	public void printResults() {
+		if (!accumulate) {
+			return;
+		}
+		long total = 0;
+		for (long phaseNanos : nanos) {
+			total += phaseNanos;
+		}
+		System.out.printf("Phase times over %d ticks:%n", ticks);
+		for (Phase phase : PHASES) {
+			long phaseNanos = nanos[phase.ordinal()];
+			System.out.printf("  %-10s %10.3f ms %5.1f%% %8.1f ns/tick", phase,
+				phaseNanos / 1e6, total == 0 ? 0 : 100.0 * phaseNanos / total,
+				ticks == 0 ? 0 : (double) phaseNanos / ticks);
+			if (allocations != null) {
+				System.out.printf(" %8.1f B/tick", ticks == 0 ? 0 :
+					(double) bytes[phase.ordinal()] / ticks);
+			}
+			System.out.println();
+		}
+	}
+}
@@ -3,8 +3,10 @@ package automail;
 import exceptions.ExcessiveDeliveryException;
 import exceptions.ItemTooHeavyException;
 import strategies.IMailPool;
-import java.util.Map;
-import java.util.TreeMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The robot delivers mail!
@@ -18,20 +20,28 @@ public class Robot {
     IMailDelivery delivery;
     protected final String id;
     /** Possible states the robot can be in */
-    public enum RobotState { DELIVERING, WAITING, RETURNING }
+    public enum RobotState { DELIVERING, WAITING, RETURNING, OUT_OF_SERVICE }
     public RobotState current_state;
     private int current_floor;
     private int destination_floor;
     private IMailPool mailPool;
     private boolean receivedDispatch;
+    /** Moves the robot when it is driven from outside, otherwise null */
+    private IRobotDriver driver = null;
+    /** The shafts robots share, null when any number may move at once */
+    private ShaftIndex shafts = null;
     
     private MailItem deliveryItem = null;
     private MailItem tube = null;
+    /** The heavier item this robot carries as part of a team, if any */
+    private Item team = null;
+    /** Ticks left before an out of service robot is back in service */
+    private int outOfServiceTime = 0;
     
     private int deliveryCounter;
     
-    static private final int INDIVIDUAL_MOVEMENT_COST = 1;
-    static private final int TEAM_MOVEMENT_COST = 3;
+    static public final int INDIVIDUAL_MOVEMENT_COST = 1;
+    static public final int TEAM_MOVEMENT_COST = 3;
     
     /**
      * represent how many time steps a robot makes a movement
@@ -68,6 +78,14 @@ public class Robot {
     		deliveryItem.getWeight() > Robot.INDIVIDUAL_MAX_WEIGHT 
     		? TEAM_MOVEMENT_COST:INDIVIDUAL_MOVEMENT_COST;
         currentCost = 0;
+        if (driver != null && current_state == RobotState.WAITING) {
+        	// a driven robot sets off now rather than on its next step
+        	receivedDispatch = false;
+        	deliveryCounter = 0;
+        	setRoute();
+        	changeState(RobotState.DELIVERING);
+        	driver.moveTo(this, destination_floor, movementCost);
+        }
     }
 
     /**
@@ -77,6 +95,12 @@ public class Robot {
      */
     public void step() throws ExcessiveDeliveryException {    	
     	switch(current_state) {
+    		/** Broken down or pulled for maintenance, wait until repaired */
+    		case OUT_OF_SERVICE:
+    			if (--outOfServiceTime == 0) {
+    				changeState(RobotState.RETURNING);
+    			}
+    			break;
     		/** This state is triggered when the robot is returning to 
     		 * the mailroom after a delivery 
     		 */
@@ -85,15 +109,7 @@ public class Robot {
     			 * should change state 
     			 */
                 if(current_floor == Building.MAILROOM_LOCATION){
-                	if (tube != null) {
-                		mailPool.addToPool(tube);
-                        System.out.printf("T: %3d > old addToPool [%s]%n",
-                        	Clock.Time(), tube.toString());
-                        tube = null;
-                	}
-        			/** Tell the sorter the robot is ready */
-        			mailPool.registerWaiting(this);
-                	changeState(RobotState.WAITING);
+                	enterMailroom();
                 } else {
                 	/** If the robot is not at the mailroom floor yet, 
                 	 * then move towards it! 
@@ -113,30 +129,7 @@ public class Robot {
                 break;
     		case DELIVERING:
     			if(current_floor == destination_floor){ 
-                    /** Delivery complete, report this to the simulator! */
-                    delivery.deliver(deliveryItem);
-                    deliveryItem = null;
-                    deliveryCounter++;
-                    movementCost = INDIVIDUAL_MOVEMENT_COST;
-                    // Implies a simulation bug
-                    if(deliveryCounter > 2){  
-                    	throw new ExcessiveDeliveryException();
-                    }
-                    /** Check if want to return, i.e. if there is no item 
-                     * in the tube
-                     */
-                    if(tube == null){
-                    	changeState(RobotState.RETURNING);
-                    }
-                    else{
-                        /** If there is another item, set the robot's route to 
-                         * the location to deliver the item 
-                         */
-                        deliveryItem = tube;
-                        tube = null;
-                        setRoute();
-                        changeState(RobotState.DELIVERING);
-                    }
+    				deliverHere();
     			} else {
 	        		/** The robot is not at the destination yet, 
 	        		 * move towards it! 
@@ -147,6 +140,99 @@ public class Robot {
     	}
     }
 
+    /**
+     * The robot is back in the mailroom, any tube item it still has goes
+     * back to the pool and it waits for more mail
+     */
+    private void enterMailroom() {
+    	if (tube != null) {
+    		mailPool.addToPool(tube);
+    		if (Simulation.VERBOSE) {
+    			System.out.printf("T: %3d > old addToPool [%s]%n",
+    				Clock.Time(), tube.toString());
+    		}
+            tube = null;
+    	}
+		/** Tell the sorter the robot is ready */
+		mailPool.registerWaiting(this);
+    	changeState(RobotState.WAITING);
+    }
+
+    /**
+     * The robot is at the floor of the item in its hand and delivers it,
+     * then heads for the tube item's floor or back to the mailroom
+     * @throws ExcessiveDeliveryException if robot delivers more than the 
+     * 	capacity of the tube without refilling
+     */
+    private void deliverHere() throws ExcessiveDeliveryException {
+        /** Delivery complete, report this to the simulator! */
+        delivery.deliver(deliveryItem, this);
+        deliveryItem = null;
+        team = null;
+        deliveryCounter++;
+        movementCost = INDIVIDUAL_MOVEMENT_COST;
+        // Implies a simulation bug
+        if(deliveryCounter > 2){  
+        	throw new ExcessiveDeliveryException();
+        }
+        /** Check if want to return, i.e. if there is no item 
+         * in the tube
+         */
+        if(tube == null){
+        	changeState(RobotState.RETURNING);
+        }
+        else{
+            /** If there is another item, set the robot's route to 
+             * the location to deliver the item 
+             */
+            deliveryItem = tube;
+            tube = null;
+            setRoute();
+            changeState(RobotState.DELIVERING);
+        }
+    }
+
+    /**
+     * Drive the robot from outside the simulation, it then moves only when
+     * the driver reports it has arrived, and step is not called
+     */
+    public void setDriver(IRobotDriver driver) {
+    	this.driver = driver;
+    }
+
+    /**
+     * A driven robot has reached the floor it was last sent to, or the
+     * mailroom when it is first driven. It delivers there and is sent on,
+     * or waits in the mailroom.
+     * @throws ExcessiveDeliveryException if robot delivers more than the 
+     * 	capacity of the tube without refilling
+     */
+    public void arrived() throws ExcessiveDeliveryException {
+    	assert(driver != null);
+    	switch (current_state) {
+    	case RETURNING:
+    		current_floor = Building.MAILROOM_LOCATION;
+    		enterMailroom();
+    		break;
+    	case DELIVERING:
+    		current_floor = destination_floor;
+    		deliverHere();
+    		driver.moveTo(this, current_state == RobotState.DELIVERING ?
+    			destination_floor : Building.MAILROOM_LOCATION, movementCost);
+    		break;
+    	default:
+    		// waiting or out of service, not sent anywhere
+    		break;
+    	}
+    }
+
+    /**
+     * Make the robot share the building's shafts with the others
+     */
+    public void setShafts(ShaftIndex shafts) {
+    	this.shafts = shafts;
+    }
+
     /**
      * Sets the route for the robot
      */
@@ -160,6 +246,12 @@ public class Robot {
      * @param destination the floor towards which the robot is moving
      */
     private void moveTowards(int destination) {
+    	// a move starts only once there is room in the shaft
+    	if (currentCost == 0 && shafts != null &&
+    		!shafts.enter(ShaftIndex.segment(current_floor, destination),
+    		team != null ? team : this, movementCost)) {
+    		return;
+    	}
     	if (++currentCost != movementCost) {
     		return;
     	}
@@ -186,12 +278,12 @@ public class Robot {
      */
     private void changeState(RobotState nextState) {
     	assert(!(deliveryItem == null && tube != null));
-    	if (current_state != nextState) {
+    	if (Simulation.VERBOSE && current_state != nextState) {
             System.out.printf("T: %3d > %7s changed from %s to %s%n", 
             	Clock.Time(), getIdTube(), current_state, nextState);
     	}
     	current_state = nextState;
-    	if(nextState == RobotState.DELIVERING){
+    	if(Simulation.VERBOSE && nextState == RobotState.DELIVERING){
             System.out.printf("T: %3d > %7s-> [%s]%n", Clock.Time(), 
             	getIdTube(), deliveryItem.toString());
     	}
@@ -200,16 +292,154 @@ public class Robot {
 	public MailItem getTube() {
 		return tube;
 	}
+
+	/**
+	 * Take the robot out of service where it stands, because it broke down
+	 * or is pulled for maintenance. A light load goes straight back to the
+	 * pool, the same as a tube item brought back when RETURNING. A team
+	 * carrying a heavier item is dissolved and the item goes back to the
+	 * pool once, a team still forming in the mailroom carries on without
+	 * this robot.
+	 * @param time how many ticks the robot is out of service
+	 * @return the mail items given back to the pool
+	 */
+	public List<MailItem> takeOutOfService(int time) {
+		assert(time > 0);
+		List<MailItem> returned = new ArrayList<MailItem>();
+		if (current_state == RobotState.OUT_OF_SERVICE) {
+			outOfServiceTime = Math.max(outOfServiceTime, time);
+			return returned;
+		}
+		if (current_state == RobotState.WAITING) {
+			mailPool.deregister(this);
+		}
+		if (team != null) {
+			if (current_state == RobotState.DELIVERING || receivedDispatch) {
+				returned.add(deliveryItem);
+				team.robotRemove(this);
+				team.dissolve();
+				mailPool.addToPool(returned.get(0));
+			}
+			// A forming team has already been told to go on without us
+			team = null;
+		} else {
+			if (deliveryItem != null) returned.add(deliveryItem);
+			if (tube != null) returned.add(tube);
+			for (MailItem mailItem : returned) {
+				mailPool.addToPool(mailItem);
+			}
+		}
+		deliveryItem = null;
+		tube = null;
+		receivedDispatch = false;
+		movementCost = INDIVIDUAL_MOVEMENT_COST;
+		currentCost = 0;
+		outOfServiceTime = time;
+		changeState(RobotState.OUT_OF_SERVICE);
+		return returned;
+	}
+
+	/**
+	 * @return whether the robot is still in the mailroom with a tube item
+	 * 	of its own it has not set off to deliver yet
+	 */
+	public boolean canSwapTube() {
+		return team == null && tube != null && deliveryCounter == 0 &&
+			current_floor == Building.MAILROOM_LOCATION &&
+			current_state != RobotState.OUT_OF_SERVICE;
+	}
+
+	/**
+	 * Replace the tube item before the robot leaves the mailroom
+	 * @param mailItem the item to carry instead
+	 * @return the item taken out of the tube
+	 */
+	public MailItem swapTube(MailItem mailItem) {
+		assert(canSwapTube() && mailItem.weight <= INDIVIDUAL_MAX_WEIGHT);
+		MailItem old = tube;
+		tube = mailItem;
+		if (Simulation.VERBOSE) {
+			System.out.printf("T: %3d > %7s swaps tube for [%s]%n",
+				Clock.Time(), getIdTube(), tube.toString());
+		}
+		return old;
+	}
+
+	/**
+	 * @return an estimate of the ticks until the robot is back in the
+	 * 	mailroom ready for more mail
+	 */
+	public int getTimeToMailroom() {
+		int floor = current_floor;
+		int time = 0;
+		switch (current_state) {
+		case WAITING:
+			return 0;
+		case OUT_OF_SERVICE:
+			time = outOfServiceTime;
+			break;
+		case DELIVERING:
+			time = Math.abs(destination_floor - floor) * movementCost + 1;
+			floor = destination_floor;
+			if (tube != null) {
+				time += Math.abs(tube.getDestFloor() - floor) + 1;
+				floor = tube.getDestFloor();
+			}
+			break;
+		case RETURNING:
+			break;
+		}
+		return time + (floor - Building.MAILROOM_LOCATION) *
+			INDIVIDUAL_MOVEMENT_COST + 1;
+	}
+
+	/**
+	 * @return whether the robot is out of service
+	 */
+	public boolean isOutOfService() {
+		return current_state == RobotState.OUT_OF_SERVICE;
+	}
+
+	/**
+	 * Join the team delivering a heavier item
+	 */
+	void joinTeam(Item item) {
+		team = item;
+	}
+
+	/**
+	 * The team this robot belongs to has been dissolved, drop the shared
+	 * item and head back to the mailroom.
+	 */
+	void leaveTeam() {
+		leaveTeam(true);
+	}
+
+	/**
+	 * @param wait whether a robot still in the mailroom registers as waiting
+	 * 	again, through the pool it was made with, which is the robot's home
+	 * 	band when the building is zoned
+	 */
+	void leaveTeam(boolean wait) {
+		team = null;
+		deliveryItem = null;
+		receivedDispatch = false;
+		movementCost = INDIVIDUAL_MOVEMENT_COST;
+		currentCost = 0;
+		if (current_state == RobotState.DELIVERING) {
+			changeState(RobotState.RETURNING);
+		} else if (current_state == RobotState.WAITING && wait) {
+			// Still in the mailroom, so ready again straight away
+			mailPool.registerWaiting(this);
+		}
+	}
     
-	static private int count = 0;
-	static private Map<Integer, Integer> hashMap = 
-		new TreeMap<Integer, Integer>();
+	static private final AtomicInteger count = new AtomicInteger();
+	/** Sequence number taken at construction, see MailItem */
+	private final int hash = count.getAndIncrement();
 
 	@Override
 	public int hashCode() {
-		Integer hash0 = super.hashCode();
-		Integer hash = hashMap.get(hash0);
-		if (hash == null) { hash = count++; hashMap.put(hash0, hash); }
 		return hash;
 	}
 
@@ -0,0 +1,49 @@
+package automail;
+
+/**
+ * Parts of a repeating period, such as a day, each with its own setting.
+ * Written as from:value separated by ;, where from is the tick in the
+ * period the part starts, each part lasting until the next starts and the
+ * last until the end of the period, e.g. 0:0.1;480:0.8;600:0.2
+ */
+final class Segments {
+
+	final long[] starts;
+	final String[] values;
+
+	Segments(String spec) {
+		String[] parts = spec.split(";");
+		starts = new long[parts.length];
+		values = new String[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			int colon = parts[i].indexOf(':');
+			if (colon <= 0) {
+				throw new IllegalArgumentException("Bad segment: " + parts[i]);
+			}
+			starts[i] = Long.parseLong(parts[i].substring(0, colon).trim());
+			values[i] = parts[i].substring(colon + 1).trim();
+			if (i == 0 ? starts[i] != 0 : starts[i] <= starts[i - 1]) {
+				throw new IllegalArgumentException(
+					"Segments must start from 0 and go up: " + spec);
+			}
+		}
+	}
+
+	/**
+	 * @param offset ticks into the period
+	 * @return the part the offset falls in
+	 */
+	static int find(long[] starts, long offset) {
+		int low = 0;
+		int high = starts.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (starts[mid] <= offset) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+}
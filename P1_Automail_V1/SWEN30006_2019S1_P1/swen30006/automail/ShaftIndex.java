@@ -0,0 +1,177 @@
+package automail;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Robots share a few shafts to move between floors, so only so many can be
+ * between the same two floors at once. Each segment, from a floor to the
+ * one above, has a place in each shaft for every robot a shaft segment
+ * holds. A robot takes a place for the ticks it takes to move to the next
+ * floor, and a team carrying a heavier item moves as one and takes one
+ * place. A robot finding every place taken waits on its floor, in turn
+ * behind those waiting for the same segment before it.
+ *
+ * The index keeps only the places of each segment, the tick each is taken
+ * until and who took it, so a robot checks its own segment and no other
+ * robot.
+ */
+public class ShaftIndex {
+
+	/** A robot or team waiting for a segment, and the last tick it asked */
+	private static class Waiter {
+		final Object mover;
+		final long since;
+		long asked;
+
+		Waiter(Object mover, long now) {
+			this.mover = mover;
+			since = now;
+			asked = now;
+		}
+	}
+
+	private final int shafts;
+	private final int capacity;
+	/** Last tick each place of each segment is taken, by segment */
+	private final long[][] until;
+	/** The robot or team that took each place */
+	private final Object[][] holders;
+	private final List<Deque<Waiter>> queues;
+
+	private long moves = 0;
+	private long delayedMoves = 0;
+	private long waitTicks = 0;
+	private long maxWait = 0;
+	private int longestQueue = 0;
+	/** Ticks of each segment's places taken, and waited for */
+	private final long[] busyTicks;
+	private final long[] segmentWaits;
+
+	/**
+	 * @param shafts shafts through the building
+	 * @param perShaft robots, or teams, one shaft holds between two floors
+	 */
+	public ShaftIndex(int shafts, int perShaft) {
+		assert(shafts > 0 && perShaft > 0);
+		this.shafts = shafts;
+		capacity = shafts * perShaft;
+		// segment f is from floor f to f + 1
+		int segments = Building.FLOORS + 1;
+		until = new long[segments][capacity];
+		holders = new Object[segments][capacity];
+		queues = new ArrayList<Deque<Waiter>>(segments);
+		for (int segment = 0; segment < segments; segment++) {
+			Arrays.fill(until[segment], -1);
+			queues.add(new ArrayDeque<Waiter>());
+		}
+		busyTicks = new long[segments];
+		segmentWaits = new long[segments];
+	}
+
+	/**
+	 * @return the segment crossed moving one floor from a floor towards
+	 * 	another
+	 */
+	public static int segment(int floor, int destination) {
+		return destination > floor ? floor : floor - 1;
+	}
+
+	/**
+	 * Take a place in the segment from this tick for the ticks of a move,
+	 * or wait for one
+	 * @param mover the robot, or the team of a robot carrying a heavier item
+	 * @return whether the move can start this tick
+	 */
+	public boolean enter(int segment, Object mover, int ticks) {
+		long now = Clock.Time();
+		long[] places = until[segment];
+		Object[] taken = holders[segment];
+		for (int place = 0; place < capacity; place++) {
+			// the rest of a team follows the member that took the place
+			if (taken[place] == mover && places[place] >= now) {
+				return true;
+			}
+		}
+		Waiter waiter = waiting(segment, mover, now);
+		Deque<Waiter> queue = queues.get(segment);
+		// a newcomer goes behind those already waiting, not past them
+		if (waiter == null && !queue.isEmpty()) {
+			join(queue, mover, now);
+			return false;
+		}
+		if (waiter != null && queue.peekFirst() != waiter) {
+			return false;
+		}
+		for (int place = 0; place < capacity; place++) {
+			if (places[place] < now) {
+				places[place] = now + ticks - 1;
+				taken[place] = mover;
+				busyTicks[segment] += ticks;
+				moves++;
+				if (waiter != null) {
+					queue.pollFirst();
+					long waited = now - waiter.since;
+					delayedMoves++;
+					waitTicks += waited;
+					segmentWaits[segment] += waited;
+					maxWait = Math.max(maxWait, waited);
+				}
+				return true;
+			}
+		}
+		if (waiter == null) {
+			join(queue, mover, now);
+		}
+		return false;
+	}
+
+	private void join(Deque<Waiter> queue, Object mover, long now) {
+		queue.addLast(new Waiter(mover, now));
+		longestQueue = Math.max(longestQueue, queue.size());
+	}
+
+	/**
+	 * Drop waiters that stopped asking, having broken down or been sent
+	 * elsewhere, so they hold up no one
+	 * @return the mover's place in the queue, null if it is not waiting
+	 */
+	private Waiter waiting(int segment, Object mover, long now) {
+		Waiter found = null;
+		Iterator<Waiter> queue = queues.get(segment).iterator();
+		while (queue.hasNext()) {
+			Waiter waiter = queue.next();
+			if (waiter.mover == mover) {
+				waiter.asked = now;
+				found = waiter;
+			} else if (waiter.asked < now - 1) {
+				queue.remove();
+			}
+		}
+		return found;
+	}
+
+	public void printResults() {
+		long time = Math.max(1, Clock.Time());
+		int busiest = 1;
+		for (int segment = 1; segment < Building.FLOORS; segment++) {
+			if (busyTicks[segment] > busyTicks[busiest]) {
+				busiest = segment;
+			}
+		}
+		System.out.printf("Shafts: %d, %d places a segment | moves %d | delayed"
+			+ " %d (%.1f%%) | wait ticks %d, mean %.2f, max %d | longest queue"
+			+ " %d%n",
+			shafts, capacity, moves, delayedMoves,
+			moves == 0 ? 0 : 100.0 * delayedMoves / moves, waitTicks,
+			moves == 0 ? 0 : (double) waitTicks / moves, maxWait, longestQueue);
+		System.out.printf("Busiest segment: floors %d-%d, in use %.1f%% of the"
+			+ " time, %d ticks waited%n", busiest, busiest + 1,
+			100.0 * busyTicks[busiest] / (time * capacity),
+			segmentWaits[busiest]);
+	}
+}
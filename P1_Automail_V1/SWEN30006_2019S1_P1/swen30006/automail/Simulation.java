@@ -3,91 +3,313 @@ package automail;
 import exceptions.ExcessiveDeliveryException;
 import exceptions.ItemTooHeavyException;
 import exceptions.MailAlreadyDeliveredException;
+import strategies.Admission;
 import strategies.Automail;
 import strategies.IMailPool;
+import strategies.ItemQueue;
 import strategies.MailPool;
+import strategies.PriorityItemQueue;
+import strategies.ScoreItemQueue;
+import strategies.ZonedMailPool;
 
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 /**
  * This class simulates the behaviour of AutoMail
  */
-public class Simulation {	
-	
+public class Simulation {
+
+    /** Whether every event of the simulation is printed */
+    public static boolean VERBOSE = true;
+
     /** Constant for the mail generator */
-    private static int MAIL_TO_CREATE;
-    private static int MAIL_MAX_WEIGHT;
-    
+    private final int MAIL_TO_CREATE;
+    private final int MAIL_MAX_WEIGHT;
 
-    private static ArrayList<MailItem> MAIL_DELIVERED;
-    private static double total_score = 0;
+    /** Building never closes, mail keeps arriving until DURATION */
+    private final boolean continuous;
+    /** Ticks to run in continuous mode, 0 runs forever */
+    private final long DURATION;
+    /**
+     * How often windowed statistics are printed in continuous mode, 0 turns
+     * the printing off
+     */
+    private final int STATS_INTERVAL;
+    /** Deliveries before this time are left out of the latency histogram */
+    private final long WARMUP;
 
-    public static void main(String[] args) throws IOException, 
-    	InstantiationException, IllegalAccessException, ClassNotFoundException {
-    	Properties automailProperties = new Properties();
-		// Default properties
-    	automailProperties.setProperty("Robots", "Standard");
-    	automailProperties.setProperty("MailPool", "strategies.SimpleMailPool");
-    	automailProperties.setProperty("Floors", "10");
-    	automailProperties.setProperty("Fragile", "false");
-    	automailProperties.setProperty("Mail_to_Create", "80");
-    	automailProperties.setProperty("Last_Delivery_Time", "100");
+    private final int robots;
+    private final Automail automail;
+    /** Where new mail enters the pool, or is quarantined */
+    private final Admission admission;
+    private final MailGenerator mailGenerator;
+    private final WindowedStatistics statistics;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    /** Whether priority arrivals may change the loads of robots */
+    private final boolean preemption;
+    private int preemptions = 0;
+    private final LatencyHistogram priorityLatencies = new LatencyHistogram();
+    /** Takes robots out of service, null when robots never fail */
+    private final FailureInjector failures;
+    /** Shafts robots queue for, null when any number may move at once */
+    private final ShaftIndex shafts;
+    /** Times the phases of each tick */
+    private final PhaseTimer phases;
 
-    	// Read properties
-		FileReader inStream = null;
-		try {
-			inStream = new FileReader("automail.properties");
-			automailProperties.load(inStream);
-		} finally {
-			 if (inStream != null) {
-	                inStream.close();
-	            }
-		}
+    private long mail_delivered = 0;
+    private double total_score = 0;
+    /** Mail handed in by mailArrived rather than by the generator */
+    private long mail_received = 0;
+    /** Records every delivery when Delivery_Log is set, otherwise null */
+    private DeliveryLog deliveryLog = null;
 
-		//Seed
-		String seedProp = automailProperties.getProperty("Seed");
+    /**
+     * Set up a simulation from its properties
+     * @param automailProperties the effective properties of this run
+     * @param seedMap holds the seed under true if one is set
+     */
+    public Simulation(Properties automailProperties,
+    	HashMap<Boolean, Integer> seedMap) {
+    	Clock.reset();
+    	// Verbose
+    	continuous = "continuous".equalsIgnoreCase(
+    		automailProperties.getProperty("Mode"));
+    	VERBOSE = Boolean.parseBoolean(automailProperties.getProperty(
+    		"Verbose", continuous ? "false" : "true"));
 		// Floors
-		Building.FLOORS = 
+		Building.FLOORS =
 			Integer.parseInt(automailProperties.getProperty("Floors"));
-        System.out.printf("Floors: %5d%n", Building.FLOORS);
+		if (VERBOSE) System.out.printf("Floors: %5d%n", Building.FLOORS);
         // Fragile
-        boolean fragile = 
+        boolean fragile =
         	Boolean.parseBoolean(automailProperties.getProperty("Fragile"));
-        System.out.printf("Fragile: %5b%n", fragile);
+        if (VERBOSE) System.out.printf("Fragile: %5b%n", fragile);
 		// Mail_to_Create
-		MAIL_TO_CREATE = 
+		MAIL_TO_CREATE =
 			Integer.parseInt(automailProperties.getProperty("Mail_to_Create"));
-        System.out.printf("Mail_to_Create: %5d%n", MAIL_TO_CREATE);
+		if (VERBOSE) System.out.printf("Mail_to_Create: %5d%n", MAIL_TO_CREATE);
         // Mail_to_Create
-     	MAIL_MAX_WEIGHT = 
+     	MAIL_MAX_WEIGHT =
      		Integer.parseInt(automailProperties.getProperty("Mail_Max_Weight"));
-        System.out.printf("Mail_Max_Weight: %5d%n", MAIL_MAX_WEIGHT);
+     	if (VERBOSE) System.out.printf("Mail_Max_Weight: %5d%n", MAIL_MAX_WEIGHT);
 		// Last_Delivery_Time
-		Clock.LAST_DELIVERY_TIME = 
+		Clock.LAST_DELIVERY_TIME =
 			Integer.parseInt(
 				automailProperties.getProperty("Last_Delivery_Time"));
-        System.out.printf("Last_Delivery_Time: %5d%n",
+		if (VERBOSE) System.out.printf("Last_Delivery_Time: %5d%n",
         	Clock.LAST_DELIVERY_TIME);
 		// Robots
-		int robots = Integer.parseInt(automailProperties.getProperty("Robots"));
-		System.out.print("Robots: "); System.out.println(robots);
+		robots = Integer.parseInt(automailProperties.getProperty("Robots"));
+		if (VERBOSE) { System.out.print("Robots: "); System.out.println(robots); }
 		assert(robots > 0);
+		// Continuous mode
+		DURATION = Long.parseLong(
+			automailProperties.getProperty("Duration", "0"));
+		STATS_INTERVAL = Integer.parseInt(
+			automailProperties.getProperty("Stats_Window", "1000"));
+		WARMUP = Long.parseLong(automailProperties.getProperty("Warmup", "0"));
 		// MailPool
-		IMailPool mailPool = new MailPool(robots);
+		preemption =
+			automailProperties.getProperty("Preemption_Threshold") != null;
+		int zones = Integer.parseInt(
+			automailProperties.getProperty("Zones", "1"));
+		IMailPool mailPool = zones > 1 ? new ZonedMailPool(robots, zones,
+			Integer.parseInt(automailProperties.getProperty(
+				"Zone_Rebalance", "200")),
+			() -> mailPool(automailProperties)) :
+			mailPool(automailProperties);
 
 		// End properties
-		
-        MAIL_DELIVERED = new ArrayList<MailItem>();
-                
+
+        Integer seed = seedMap.get(true);
+        if (VERBOSE) System.out.printf("Seed: %s%n",
+        	seed == null ? "null" : seed.toString());
+        automail = new Automail(mailPool, new ReportDelivery(), robots);
+        admission = new Admission(automail.mailPool);
+        mailGenerator = new MailGenerator(MAIL_TO_CREATE, MAIL_MAX_WEIGHT,
+        	admission, seedMap);
+        mailGenerator.setMailMix(mailMix(automailProperties));
+        statistics = new WindowedStatistics(Math.max(STATS_INTERVAL, 1));
+        if (continuous) {
+        	mailGenerator.setArrivalProcess(
+        		arrivalProcess(automailProperties));
+        }
+        failures = failureInjector(automailProperties, automail.robots, seed);
+        // Shafts
+        int shaftCount = Integer.parseInt(
+        	automailProperties.getProperty("Shafts", "0"));
+        shafts = shaftCount > 0 ? new ShaftIndex(shaftCount,
+        	Integer.parseInt(automailProperties.getProperty(
+        		"Shaft_Capacity", "1"))) : null;
+        for (Robot robot : automail.robots) {
+        	robot.setShafts(shafts);
+        }
+        SimulationEvents.ENABLED = Boolean.parseBoolean(
+        	automailProperties.getProperty("Flight_Events", "false"));
+        phases = new PhaseTimer(Boolean.parseBoolean(
+        	automailProperties.getProperty("Profile", "false")));
+        String deliveryLogFile = automailProperties.getProperty("Delivery_Log");
+        if (deliveryLogFile != null) {
+        	try {
+        		deliveryLog = new DeliveryLog(Paths.get(deliveryLogFile));
+        	} catch (IOException e) {
+        		e.printStackTrace();
+        	}
+        }
+    }
+
+    /**
+     * @return the failure injector configured, or null if robots never fail
+     */
+    private static FailureInjector failureInjector(
+    	Properties automailProperties, Robot[] robots, Integer seed) {
+    	double failureRate = Double.parseDouble(
+    		automailProperties.getProperty("Failure_Rate", "0"));
+    	int maintenanceInterval = Integer.parseInt(
+    		automailProperties.getProperty("Maintenance_Interval", "0"));
+    	String events = automailProperties.getProperty("Failure_Events", "");
+    	if (failureRate <= 0 && maintenanceInterval <= 0 && events.isEmpty()) {
+    		return null;
+    	}
+    	FailureInjector failures = new FailureInjector(robots, failureRate,
+    		Integer.parseInt(automailProperties.getProperty("Repair_Time", "50")),
+    		maintenanceInterval, Integer.parseInt(
+    			automailProperties.getProperty("Maintenance_Time", "30")),
+    		seed == null ? System.nanoTime() : seed + 1L);
+    	failures.schedule(events);
+    	return failures;
+    }
+
+    /**
+     * @return a mail pool set up with the dispatch, assignment and
+     * 	preemption properties
+     */
+    private MailPool mailPool(Properties automailProperties) {
+		MailPool mailPool = new MailPool(robots,
+			itemQueue(automailProperties));
+		// Assignment
+		if ("batch".equalsIgnoreCase(
+			automailProperties.getProperty("Assignment", "greedy"))) {
+			mailPool.setAssignmentBudget(Long.parseLong(
+				automailProperties.getProperty("Assignment_Budget", "20000")));
+		}
+		// Preemption
+		if (preemption) {
+			mailPool.setPreemptionThreshold(Double.parseDouble(
+				automailProperties.getProperty("Preemption_Threshold")));
+		}
+		return mailPool;
+    }
+
+    /**
+     * @return the order the mail pool hands out items in
+     */
+    private static ItemQueue itemQueue(Properties automailProperties) {
+    	String dispatch = automailProperties.getProperty("Dispatch", "priority");
+    	switch (dispatch.toLowerCase()) {
+    	case "priority":
+    		return new PriorityItemQueue(Double.parseDouble(
+    			automailProperties.getProperty("Distance_Weight", "0")));
+    	case "score":
+    		return new ScoreItemQueue();
+    	default:
+    		throw new IllegalArgumentException("Unknown Dispatch: " + dispatch);
+    	}
+    }
+
+    /**
+     * @return the arrival process configured for continuous mode, the sum
+     * 	of the processes named in Arrival_Process separated by +
+     */
+    public static ArrivalProcess arrivalProcess(Properties automailProperties) {
+    	List<ArrivalProcess> processes = new ArrayList<ArrivalProcess>();
+    	for (String process : automailProperties.getProperty(
+    		"Arrival_Process", "poisson").split("\\+")) {
+    		processes.add(arrivalProcess(automailProperties,
+    			process.trim().toLowerCase()));
+    	}
+    	return ArrivalProcess.sum(processes);
+    }
+
+    private static ArrivalProcess arrivalProcess(Properties automailProperties,
+    	String process) {
+    	double rate = Double.parseDouble(
+    		automailProperties.getProperty("Arrival_Rate", "0.2"));
+    	int period = Integer.parseInt(
+    		automailProperties.getProperty("Diurnal_Period", "1440"));
+    	switch (process) {
+    	case "poisson":
+    		return ArrivalProcess.poisson(rate);
+    	case "diurnal":
+    		return ArrivalProcess.diurnal(rate, period,
+    			Double.parseDouble(automailProperties.getProperty(
+    				"Diurnal_Amplitude", "0.8")));
+    	case "schedule":
+    		Segments segments = new Segments(
+    			automailProperties.getProperty("Arrival_Schedule", "0:" + rate));
+    		double[] rates = new double[segments.values.length];
+    		for (int i = 0; i < rates.length; i++) {
+    			rates[i] = Double.parseDouble(segments.values[i]);
+    		}
+    		return ArrivalProcess.schedule(segments.starts, rates, period);
+    	case "bursty":
+    		return ArrivalProcess.bursty(
+    			Double.parseDouble(automailProperties.getProperty(
+    				"Burst_Rate", "2")),
+    			Double.parseDouble(automailProperties.getProperty(
+    				"Burst_Length", "30")),
+    			Double.parseDouble(automailProperties.getProperty(
+    				"Burst_Gap", "500")));
+    	case "drops":
+    		return ArrivalProcess.drops(
+    			Integer.parseInt(automailProperties.getProperty(
+    				"Drop_Size", "500")),
+    			Integer.parseInt(automailProperties.getProperty(
+    				"Drop_Every", String.valueOf(period))),
+    			Integer.parseInt(automailProperties.getProperty(
+    				"Drop_At", "0")));
+    	case "replay":
+    		String trace = automailProperties.getProperty("Replay_File");
+    		if (trace == null) {
+    			throw new IllegalArgumentException("Replay needs a Replay_File");
+    		}
+    		try {
+    			return ArrivalProcess.replay(Paths.get(trace));
+    		} catch (IOException e) {
+    			throw new IllegalArgumentException(
+    				"Cannot read Replay_File: " + trace, e);
+    		}
+    	default:
+    		throw new IllegalArgumentException(
+    			"Unknown Arrival_Process: " + process);
+    	}
+    }
+
+    /**
+     * @return the mix of mail by time of day, null for the default mix
+     */
+    public static MailMix mailMix(Properties automailProperties) {
+    	String mix = automailProperties.getProperty("Mail_Mix");
+    	return mix == null ? null : new MailMix(mix, Integer.parseInt(
+    		automailProperties.getProperty("Diurnal_Period", "1440")));
+    }
+
+    public static void main(String[] args) throws IOException {
+    	Properties automailProperties = loadProperties("automail.properties");
+
         /** Used to see whether a seed is initialized or not */
         HashMap<Boolean, Integer> seedMap = new HashMap<>();
-        
+
         /** Read the first argument and save it as a seed if it exists */
+		String seedProp = automailProperties.getProperty("Seed");
         // No arg
         if (args.length == 0 ) {
         	// and no property
@@ -95,61 +317,192 @@ public class Simulation {
         		seedMap.put(false, 0);
         	}
         	// Use property seed
-        	else { 
+        	else {
         		seedMap.put(true, Integer.parseInt(seedProp));
         	}
-        } 
+        }
         // Use arg seed - overrides property
-        else { 
+        else {
         	seedMap.put(true, Integer.parseInt(args[0]));
         }
-        Integer seed = seedMap.get(true);
-        System.out.printf("Seed: %s%n", 
-        	seed == null ? "null" : seed.toString());
-        Automail automail = 
-        	new Automail(mailPool, new ReportDelivery(), robots);
-        MailGenerator mailGenerator = 
-        	new MailGenerator(MAIL_TO_CREATE, MAIL_MAX_WEIGHT, 
-        		automail.mailPool, seedMap);
-        
-        /** Initiate all the mail */
-        mailGenerator.generateAllMail();
-        // PriorityMailItem priority;
-        while(MAIL_DELIVERED.size() != mailGenerator.MAIL_TO_CREATE) {
-            mailGenerator.step();
+        Simulation simulation = new Simulation(automailProperties, seedMap);
+        simulation.run();
+        simulation.printResults();
+    }
+
+    /**
+     * Read the properties of a run, on top of the defaults
+     * @param fileName the properties file
+     * @return the effective properties
+     */
+    public static Properties loadProperties(String fileName) throws IOException {
+    	Properties automailProperties = new Properties();
+		// Default properties
+    	automailProperties.setProperty("Robots", "Standard");
+    	automailProperties.setProperty("MailPool", "strategies.SimpleMailPool");
+    	automailProperties.setProperty("Floors", "10");
+    	automailProperties.setProperty("Fragile", "false");
+    	automailProperties.setProperty("Mail_to_Create", "80");
+    	automailProperties.setProperty("Last_Delivery_Time", "100");
+    	automailProperties.setProperty("Mode", "batch");
+
+    	// Read properties
+		FileReader inStream = null;
+		try {
+			inStream = new FileReader(fileName);
+			automailProperties.load(inStream);
+		} finally {
+			 if (inStream != null) {
+	                inStream.close();
+	            }
+		}
+		return automailProperties;
+    }
+
+    /**
+     * Run until all mail is delivered, or in continuous mode until DURATION
+     */
+    public void run() {
+    	if (!continuous) {
+    		/** Initiate all the mail */
+    		mailGenerator.generateAllMail();
+    	}
+        while(!finished()) {
+        	if (Clock.Time() == WARMUP && WARMUP > 0) {
+        		// the profile is of the simulation once it has settled
+        		phases.reset();
+        	}
+        	phases.begin(PhaseTimer.Phase.GENERATE);
+        	long created = mailGenerator.getMailCreated();
+            PriorityMailItem priority = mailGenerator.step();
+            phases.begin(PhaseTimer.Phase.PREEMPT);
+            if (priority != null && preemption && admission.admits(priority) &&
+            	automail.mailPool.priorityArrival(priority, automail.robots)) {
+            	preemptions++;
+            }
+            phases.begin(PhaseTimer.Phase.FAILURES);
+            if (failures != null) {
+            	failures.step();
+            }
             try {
+            	phases.begin(PhaseTimer.Phase.MAIL_POOL);
                 automail.mailPool.step();
+                phases.begin(PhaseTimer.Phase.ROBOTS);
 				for (int i=0; i<robots; i++) automail.robots[i].step();
 			} catch (ExcessiveDeliveryException|ItemTooHeavyException e) {
 				e.printStackTrace();
 				System.out.println("Simulation unable to complete.");
 				System.exit(0);
 			}
+            phases.begin(PhaseTimer.Phase.STATISTICS);
+            if (continuous) {
+            	statistics.recordArrivals(
+            		mailGenerator.getMailCreated() - created);
+            	if (STATS_INTERVAL > 0 &&
+            		(Clock.Time() + 1) % STATS_INTERVAL == 0) {
+            		printWindow();
+            	}
+            }
+            statistics.tick();
+            phases.end();
             Clock.Tick();
         }
-        printResults();
+        closeDeliveryLog();
     }
-    
-    static class ReportDelivery implements IMailDelivery {
+
+    /**
+     * Write out the deliveries still held by the delivery log, if any, run
+     * does this when it finishes
+     */
+    public void closeDeliveryLog() {
+    	if (deliveryLog != null) {
+    		try {
+    			deliveryLog.close();
+    		} catch (IOException e) {
+    			e.printStackTrace();
+    		}
+    		deliveryLog = null;
+    	}
+    }
+
+    /**
+     * Mail arriving now, in a simulation driven from outside rather than by
+     * run, with a priority item changing loads as in run
+     */
+    public void mailArrived(MailItem mailItem) {
+    	SimulationEvents.mailArrival(mailItem);
+    	admission.addToPool(mailItem);
+    	mail_received++;
+    	if (mailItem instanceof PriorityMailItem && preemption &&
+    		admission.admits(mailItem) &&
+    		automail.mailPool.priorityArrival((PriorityMailItem) mailItem,
+    		automail.robots)) {
+    		preemptions++;
+    	}
+    }
+
+    /**
+     * Load and dispatch the waiting robots, in a simulation driven from
+     * outside
+     */
+    public void dispatch() throws ItemTooHeavyException {
+    	automail.mailPool.step();
+    }
+
+    /**
+     * @return every robot of the fleet
+     */
+    public Robot[] getRobots() {
+    	return automail.robots;
+    }
+
+    private boolean finished() {
+    	if (continuous) {
+    		return DURATION > 0 && Clock.Time() >= DURATION;
+    	}
+    	// quarantined mail is accounted for without being delivered
+    	return mail_delivered + admission.getQuarantine().getCount() ==
+    		mailGenerator.MAIL_TO_CREATE;
+    }
+
+    private void printWindow() {
+    	System.out.printf("T: %d | arrivals %.3f/tick | throughput %.3f/tick"
+    		+ " | mean latency %.1f | pool %d | delivered %d%n",
+    		Clock.Time(), statistics.getArrivalRate(),
+    		statistics.getThroughput(), statistics.getMeanLatency(),
+    		automail.mailPool.getPoolSize(), mail_delivered);
+    }
+
+    class ReportDelivery implements IMailDelivery {
     	/**
-    	 * represent the heavier mail item, when all coordinated robots report 
+    	 * represent the heavier mail item, when all coordinated robots report
     	 * delivery, then record it as delivered.
     	 */
-    	private Map<MailItem, Integer> heavierItemMap = 
-    		new HashMap<MailItem, Integer>();
-    	
-    	/** 
-    	 * Confirm the delivery and calculate the total score 
+    	private Map<MailItem, List<Robot>> heavierItemMap =
+    		new HashMap<MailItem, List<Robot>>();
+
+    	/**
+    	 * Confirm the delivery and calculate the total score
     	 */
     	public void deliver(MailItem deliveryItem) {
+    		deliver(deliveryItem, null);
+    	}
+
+    	@Override
+    	public void deliver(MailItem deliveryItem, Robot robot) {
+    		/** The robots of a team, null when one robot delivers */
+    		List<Robot> team = null;
     		if (deliveryItem.getWeight() > Robot.INDIVIDUAL_MAX_WEIGHT) {
     			if(!heavierItemMap.containsKey(deliveryItem)) {
-    				heavierItemMap.put(deliveryItem, 1);
+    				team = new ArrayList<Robot>(3);
+    				team.add(robot);
+    				heavierItemMap.put(deliveryItem, team);
         			return;
     			} else {
-    				int currentRecord = heavierItemMap.get(deliveryItem);
-    				heavierItemMap.put(deliveryItem, ++currentRecord);
-    				int triggerRecord = 
+    				team = heavierItemMap.get(deliveryItem);
+    				team.add(robot);
+    				int currentRecord = team.size();
+    				int triggerRecord =
     					deliveryItem.getWeight() > Robot.PAIR_MAX_WEIGHT ? 3:2;
     				if (triggerRecord != currentRecord) {
     					return;
@@ -157,15 +510,41 @@ public class Simulation {
     					heavierItemMap.remove(deliveryItem);
     				}
     			}
-    		}   		
-    		
-    		if(!MAIL_DELIVERED.contains(deliveryItem)){
-    			MAIL_DELIVERED.add(deliveryItem);
-                System.out.printf("T: %3d > Delivered(%4d) [%s]%n", 
-                		Clock.Time(), MAIL_DELIVERED.size(),
+    		}
+
+    		// Delivered items are only counted, never kept
+    		if(!deliveryItem.delivered){
+    			deliveryItem.delivered = true;
+    			mail_delivered++;
+    			if (VERBOSE) {
+    				System.out.printf("T: %3d > Delivered(%4d) [%s]%n",
+                		Clock.Time(), mail_delivered,
                 		deliveryItem.toString());
+    			}
     			// Calculate delivery score
-    			total_score += calculateDeliveryScore(deliveryItem);
+    			double score = calculateDeliveryScore(deliveryItem);
+    			total_score += score;
+    			long latency = Clock.Time() - deliveryItem.getArrivalTime();
+    			statistics.recordDelivery(latency, score);
+    			if (Clock.Time() >= WARMUP) {
+    				latencies.record(latency);
+    			}
+    			if (failures != null) {
+    				failures.recordDelivery(deliveryItem, latency, score);
+    			}
+    			if (deliveryItem instanceof PriorityMailItem) {
+    				priorityLatencies.record(latency);
+    			}
+    			SimulationEvents.delivery(deliveryItem, latency, score);
+    			if (deliveryLog != null) {
+    				try {
+    					deliveryLog.record(deliveryItem, team != null ? team :
+    						Collections.singletonList(robot), latency, score);
+    				} catch (IOException e) {
+    					e.printStackTrace();
+    					closeDeliveryLog();
+    				}
+    			}
     		}
     		else{
     			try {
@@ -177,23 +556,103 @@ public class Simulation {
     	}
 
     }
-    
+
     private static double calculateDeliveryScore(MailItem deliveryItem) {
     	// Penalty for longer delivery times
     	final double penalty = 1.2;
     	double priority_weight = 0;
         // Take (delivery time - arrivalTime)**penalty*(1+sqrt(priority_weight))
     	if(deliveryItem instanceof PriorityMailItem){
-    		priority_weight = 
+    		priority_weight =
     			((PriorityMailItem) deliveryItem).getPriorityLevel();
     	}
         return Math.pow(Clock.Time() - deliveryItem.getArrivalTime(),penalty)
         	*(1+Math.sqrt(priority_weight));
     }
 
-    public static void printResults(){
+    /**
+     * Generate all the mail of a batch run before it starts, run still
+     * delivers the same mail
+     * @return every mail item that will arrive, by arrival time
+     */
+    public List<MailItem> getArrivals() {
+    	assert(!continuous);
+    	mailGenerator.generateAllMail();
+    	return mailGenerator.getAllMail();
+    }
+
+    /**
+     * @return the time the run finished at
+     */
+    public long getFinalTime() {
+    	return Clock.Time();
+    }
+
+    /**
+     * @return the total score of all deliveries
+     */
+    public double getTotalScore() {
+    	return total_score;
+    }
+
+    /**
+     * @return latencies of the deliveries made after the warmup
+     */
+    public LatencyHistogram getLatencies() {
+    	return latencies;
+    }
+
+    /**
+     * @return the number of mail items waiting in the pool
+     */
+    public int getPoolSize() {
+    	return automail.mailPool.getPoolSize();
+    }
+
+    /**
+     * @return the phase times of the run, added up only when Profile is set
+     */
+    public PhaseTimer getPhases() {
+    	return phases;
+    }
+
+    /**
+     * @return the number of mail items delivered
+     */
+    public long getMailDelivered() {
+    	return mail_delivered;
+    }
+
+    public void printResults(){
         System.out.println("T: "+Clock.Time()+" | Simulation complete!");
-        System.out.println("Final Delivery time: "+Clock.Time());
+        if (continuous) {
+        	System.out.println("Mail arrived: "
+        		+(mailGenerator.getMailCreated()+mail_received));
+        	System.out.println("Mail delivered: "+mail_delivered);
+        	System.out.println("Mail in pool: "
+        		+automail.mailPool.getPoolSize());
+        } else {
+        	System.out.println("Final Delivery time: "+Clock.Time());
+        }
         System.out.printf("Final Score: %.2f%n", total_score);
+        if (preemption) {
+        	System.out.printf("Preemptions: %d | priority items mean latency:"
+        		+ " %.1f | p99: %d%n", preemptions, priorityLatencies.getMean(),
+        		priorityLatencies.getPercentile(99));
+        }
+        if (admission.getQuarantine().getCount() > 0) {
+        	admission.getQuarantine().printResults();
+        }
+        if (failures != null) {
+        	failures.printResults();
+        }
+        if (shafts != null) {
+        	shafts.printResults();
+        }
+        if (automail.mailPool instanceof ZonedMailPool) {
+        	System.out.println("Zones: " +
+        		((ZonedMailPool) automail.mailPool).describeZones());
+        }
+        phases.printResults();
     }
 }
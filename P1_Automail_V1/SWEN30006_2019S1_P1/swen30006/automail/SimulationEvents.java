@@ -0,0 +1,214 @@
+package automail;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events of the simulation, made when Flight_Events is
+ * set and recorded with for example
+ *
+ *   java -XX:StartFlightRecording=filename=run.jfr automail.Simulation
+ *   jfr print --events automail.Delivery run.jfr
+ *
+ * Without Flight_Events the event classes are never loaded, which would
+ * start the recorder's machinery and add almost half a second to the start
+ * of the JVM, and each event costs one check of a flag.
+ *
+ * Only tick phases longer than 20 us are recorded unless the recording sets
+ * automail.TickPhase#threshold=0 ns, as every phase of a long run is millions
+ * of events.
+ *
+ * Each event is made and committed only if it is enabled in the recording.
+ */
+public class SimulationEvents {
+
+	/** Whether events are made, set from Flight_Events */
+	public static boolean ENABLED = false;
+
+	private static final String CATEGORY = "Automail";
+
+	@Name("automail.TickPhase")
+	@Label("Tick Phase")
+	@Description("One phase of one tick of the simulation loop")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	@Threshold("20 us")
+	static class TickPhase extends Event {
+		@Label("Tick")
+		long tick;
+		@Label("Phase")
+		String phase;
+	}
+
+	@Name("automail.MailArrival")
+	@Label("Mail Arrival")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class MailArrival extends Event {
+		@Label("Tick")
+		long tick;
+		@Label("Mail Item")
+		String item;
+		@Label("Floor")
+		int floor;
+		@Label("Weight")
+		int weight;
+		@Label("Priority Level")
+		int priority;
+	}
+
+	@Name("automail.Allocation")
+	@Label("Allocation")
+	@Description("Items given to a robot in the mailroom")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class Allocation extends Event {
+		@Label("Tick")
+		long tick;
+		@Label("Robot")
+		String robot;
+		@Label("Hand Item")
+		String hand;
+		@Label("Tube Item")
+		String tube;
+		@Label("Decision")
+		@Description("greedy, batch, team or preempt")
+		String decision;
+		@Label("Ticks Waiting")
+		long waited;
+	}
+
+	@Name("automail.AllocationFailure")
+	@Label("Allocation Failure")
+	@Description("An ItemAllocationException thrown by a team")
+	@Category(CATEGORY)
+	static class AllocationFailure extends Event {
+		@Label("Tick")
+		long tick;
+		@Label("Robot")
+		String robot;
+		@Label("Mail Item")
+		String item;
+		@Label("Reason")
+		String reason;
+	}
+
+	@Name("automail.TeamFormed")
+	@Label("Team Formed")
+	@Description("Enough robots joined to carry a heavier item")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class TeamFormed extends Event {
+		@Label("Tick")
+		long tick;
+		@Label("Mail Item")
+		String item;
+		@Label("Robots")
+		int robots;
+		@Label("Ticks Waiting")
+		long waited;
+	}
+
+	@Name("automail.Delivery")
+	@Label("Delivery")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class Delivery extends Event {
+		@Label("Tick")
+		long tick;
+		@Label("Mail Item")
+		String item;
+		@Label("Floor")
+		int floor;
+		@Label("Latency Ticks")
+		long latency;
+		@Label("Score")
+		double score;
+	}
+
+	public static void mailArrival(MailItem mailItem) {
+		if (!ENABLED) {
+			return;
+		}
+		MailArrival event = new MailArrival();
+		if (event.isEnabled()) {
+			event.tick = Clock.Time();
+			event.item = mailItem.getId();
+			event.floor = mailItem.getDestFloor();
+			event.weight = mailItem.getWeight();
+			event.priority = mailItem instanceof PriorityMailItem ?
+				((PriorityMailItem) mailItem).getPriorityLevel() : 0;
+			event.commit();
+		}
+	}
+
+	/**
+	 * @param tube the item put in the tube, or null
+	 * @param decision how the robot was chosen
+	 */
+	public static void allocation(Robot robot, MailItem hand, MailItem tube,
+		String decision) {
+		if (!ENABLED) {
+			return;
+		}
+		Allocation event = new Allocation();
+		if (event.isEnabled()) {
+			event.tick = Clock.Time();
+			event.robot = robot.id;
+			event.hand = hand.getId();
+			event.tube = tube == null ? null : tube.getId();
+			event.decision = decision;
+			event.waited = Clock.Time() - hand.getArrivalTime();
+			event.commit();
+		}
+	}
+
+	public static void allocationFailure(Robot robot, MailItem mailItem,
+		String reason) {
+		if (!ENABLED) {
+			return;
+		}
+		AllocationFailure event = new AllocationFailure();
+		if (event.isEnabled()) {
+			event.tick = Clock.Time();
+			event.robot = robot.id;
+			event.item = mailItem.getId();
+			event.reason = reason;
+			event.commit();
+		}
+	}
+
+	static void teamFormed(MailItem mailItem, int robots) {
+		if (!ENABLED) {
+			return;
+		}
+		TeamFormed event = new TeamFormed();
+		if (event.isEnabled()) {
+			event.tick = Clock.Time();
+			event.item = mailItem.getId();
+			event.robots = robots;
+			event.waited = Clock.Time() - mailItem.getArrivalTime();
+			event.commit();
+		}
+	}
+
+	static void delivery(MailItem mailItem, long latency, double score) {
+		if (!ENABLED) {
+			return;
+		}
+		Delivery event = new Delivery();
+		if (event.isEnabled()) {
+			event.tick = Clock.Time();
+			event.item = mailItem.getId();
+			event.floor = mailItem.getDestFloor();
+			event.latency = latency;
+			event.score = score;
+			event.commit();
+		}
+	}
+}
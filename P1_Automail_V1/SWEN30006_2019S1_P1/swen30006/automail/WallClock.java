@@ -0,0 +1,34 @@
+package automail;
+
+/**
+ * A clock that follows real time, for driving the mail pool as a live
+ * dispatcher. A tick is a fixed number of nanoseconds from when the clock
+ * was made, and Tick does nothing since time moves on by itself.
+ */
+public class WallClock extends Clock {
+
+	private final long start = System.nanoTime();
+	private final long tickNanos;
+
+	/**
+	 * @param tickNanos real time in one tick
+	 */
+	public WallClock(long tickNanos) {
+		assert(tickNanos > 0);
+		this.tickNanos = tickNanos;
+	}
+
+	@Override
+	protected long now() {
+		return (System.nanoTime() - start) / tickNanos;
+	}
+
+	@Override
+	protected void advance() {
+		// real time is not advanced by the simulation
+	}
+
+	public long getTickNanos() {
+		return tickNanos;
+	}
+}
@@ -0,0 +1,121 @@
+package automail;
+
+/**
+ * Sliding window statistics over the most recent ticks. Every tick owns one
+ * slot of a ring buffer, so memory stays the same however long the
+ * simulation runs and nothing is kept per mail item.
+ */
+public class WindowedStatistics {
+
+	/** The number of ticks the window covers */
+	private final int window;
+
+	private final int[] arrived;
+	private final int[] delivered;
+	private final long[] latency;
+	private final double[] score;
+	private int slot = 0;
+
+	private long windowArrived = 0;
+	private long windowDelivered = 0;
+	private long windowLatency = 0;
+	private double windowScore = 0;
+	private long ticks = 0;
+
+	/**
+	 * @param window the number of ticks the window covers
+	 */
+	public WindowedStatistics(int window) {
+		assert(window > 0);
+		this.window = window;
+		arrived = new int[window];
+		delivered = new int[window];
+		latency = new long[window];
+		score = new double[window];
+	}
+
+	/**
+	 * Record mail items arriving in the current tick
+	 * @param count how many arrived
+	 */
+	public void recordArrivals(long count) {
+		arrived[slot] += count;
+		windowArrived += count;
+	}
+
+	/**
+	 * Record a delivery in the current tick
+	 * @param itemLatency ticks between arrival and delivery
+	 * @param itemScore the score of the delivery
+	 */
+	public void recordDelivery(long itemLatency, double itemScore) {
+		delivered[slot]++;
+		latency[slot] += itemLatency;
+		score[slot] += itemScore;
+		windowDelivered++;
+		windowLatency += itemLatency;
+		windowScore += itemScore;
+	}
+
+	/**
+	 * Close the current tick, the oldest one falls out of the window
+	 */
+	public void tick() {
+		ticks++;
+		slot = (slot + 1) % window;
+		windowArrived -= arrived[slot];
+		windowDelivered -= delivered[slot];
+		windowLatency -= latency[slot];
+		windowScore -= score[slot];
+		arrived[slot] = 0;
+		delivered[slot] = 0;
+		latency[slot] = 0;
+		score[slot] = 0;
+	}
+
+	/**
+	 * @return the number of ticks currently covered, less than the window
+	 * 	size until enough ticks have passed
+	 */
+	public int getCoveredTicks() {
+		return (int) Math.min(ticks, window);
+	}
+
+	/**
+	 * @return arrivals per tick over the window
+	 */
+	public double getArrivalRate() {
+		return getCoveredTicks() == 0 ? 0 :
+			(double) windowArrived / getCoveredTicks();
+	}
+
+	/**
+	 * @return deliveries per tick over the window
+	 */
+	public double getThroughput() {
+		return getCoveredTicks() == 0 ? 0 :
+			(double) windowDelivered / getCoveredTicks();
+	}
+
+	/**
+	 * @return mean ticks from arrival to delivery over the window
+	 */
+	public double getMeanLatency() {
+		return windowDelivered == 0 ? 0 :
+			(double) windowLatency / windowDelivered;
+	}
+
+	/**
+	 * @return total score of deliveries made in the window
+	 */
+	public double getScore() {
+		return windowScore;
+	}
+
+	/**
+	 * @return deliveries made in the window
+	 */
+	public long getDelivered() {
+		return windowDelivered;
+	}
+}
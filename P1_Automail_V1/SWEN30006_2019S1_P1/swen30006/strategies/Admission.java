@@ -0,0 +1,79 @@
+package strategies;
+
+import automail.Clock;
+import automail.MailClass;
+import automail.MailItem;
+import automail.PriorityMailItem;
+import automail.Robot;
+import automail.Simulation;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * Stands in front of a pool for newly arrived mail. Each item is classed by
+ * MailClass, by comparisons alone, and mail no robots can deliver goes to
+ * the quarantine rather than the pool, where it would otherwise fail when
+ * loaded and never be delivered. Mail coming back from robots was let in
+ * once already and goes straight to the pool.
+ */
+public class Admission implements IMailPool {
+
+	private final IMailPool mailPool;
+	private final Quarantine quarantine = new Quarantine();
+
+	public Admission(IMailPool mailPool) {
+		this.mailPool = mailPool;
+	}
+
+	/**
+	 * Add the item to the pool, or quarantine it
+	 */
+	@Override
+	public void addToPool(MailItem mailItem) {
+		MailClass mailClass = MailClass.of(mailItem);
+		if (!mailClass.isRejected()) {
+			mailPool.addToPool(mailItem);
+			return;
+		}
+		quarantine.add(mailItem, mailClass);
+		if (Simulation.VERBOSE) {
+			System.out.printf("T: %3d > quarantined %s [%s]%n", Clock.Time(),
+				mailClass.name().toLowerCase(), mailItem.toString());
+		}
+	}
+
+	/**
+	 * @return whether the item would be let in
+	 */
+	public boolean admits(MailItem mailItem) {
+		return !MailClass.of(mailItem).isRejected();
+	}
+
+	public Quarantine getQuarantine() {
+		return quarantine;
+	}
+
+	@Override
+	public void step() throws ItemTooHeavyException {
+		mailPool.step();
+	}
+
+	@Override
+	public void registerWaiting(Robot robot) {
+		mailPool.registerWaiting(robot);
+	}
+
+	@Override
+	public void deregister(Robot robot) {
+		mailPool.deregister(robot);
+	}
+
+	@Override
+	public boolean priorityArrival(PriorityMailItem mailItem, Robot[] robots) {
+		return mailPool.priorityArrival(mailItem, robots);
+	}
+
+	@Override
+	public int getPoolSize() {
+		return mailPool.getPoolSize();
+	}
+}
@@ -0,0 +1,266 @@
+package strategies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import automail.Building;
+import automail.Clock;
+import automail.Item;
+import automail.MailItem;
+import automail.PriorityMailItem;
+import automail.Robot;
+
+/**
+ * Shares out the items at the head of the pool among all the robots waiting
+ * in the mailroom at once, instead of letting each robot in turn take the
+ * next hand and tube item. Light items are paired by floor, heavier items
+ * take a whole team, and an item is left for a later trip only when there
+ * are not enough robots for it.
+ *
+ * A load costs the score of its items at their delivery times plus the
+ * robot time of the trip, priced at the rate the waiting items gain score.
+ * The cheapest way to share out the items is found by branch and bound,
+ * starting from the greedy assignment. The search stops after a budget of
+ * nodes, so it takes bounded time and a given seed always gives the same
+ * result, and keeps the best assignment found so far, which is never worse
+ * than greedy.
+ */
+class BatchAssignment {
+
+	private static final double PENALTY = 1.2;
+
+	/** What one robot, or one team for a heavier item, is given */
+	static class Load {
+		final Item hand;
+		final Item tube;
+
+		Load(Item hand, Item tube) {
+			this.hand = hand;
+			this.tube = tube;
+		}
+	}
+
+	/** Most nodes searched for one assignment */
+	private final long budget;
+
+	private Item[] items;
+	private int count;
+	private double[] weight;
+	private long[] age;
+	private int[] floor;
+	private int[] robotsNeeded;
+	private double[] lowerBound;
+	private double[] leftCost;
+	/** Price of a tick of robot time */
+	private double robotTime;
+
+	private long nodes;
+	private boolean[] used;
+	/** Partner of each item in the current and the best assignment */
+	private int[] partner;
+	private int[] bestPartner;
+	private double bestCost;
+
+	private static final int LEFT = -2;
+	private static final int ALONE = -1;
+	/** Marks the tube item of a pair, its partner is the hand item */
+	private static final int TUBE_OFFSET = 1 << 16;
+
+	/**
+	 * @param budget most nodes searched for one assignment
+	 */
+	BatchAssignment(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * @param window the items at the head of the pool, in pool order
+	 * @param robots the number of robots waiting
+	 * @return the loads to give the robots, items not in a load stay in the
+	 * 	pool
+	 */
+	List<Load> solve(List<Item> window, int robots) {
+		prepare(window);
+		bestPartner = greedy(robots);
+		bestCost = cost(bestPartner);
+		partner = new int[count];
+		used = new boolean[count];
+		nodes = 0;
+		double bound = 0;
+		for (int i = 0; i < count; i++) {
+			bound += lowerBound[i];
+		}
+		search(0, robots, 0, bound);
+
+		List<Load> loads = new ArrayList<Load>();
+		for (int i = 0; i < count; i++) {
+			if (bestPartner[i] == ALONE) {
+				loads.add(new Load(items[i], null));
+			} else if (bestPartner[i] >= 0 && bestPartner[i] < TUBE_OFFSET) {
+				loads.add(new Load(items[i], items[bestPartner[i]]));
+			}
+		}
+		return loads;
+	}
+
+	private void prepare(List<Item> window) {
+		count = window.size();
+		items = window.toArray(new Item[count]);
+		weight = new double[count];
+		age = new long[count];
+		floor = new int[count];
+		robotsNeeded = new int[count];
+		lowerBound = new double[count];
+		leftCost = new double[count];
+		long now = Clock.Time();
+		double longestTrip = 0;
+		robotTime = 0;
+		for (int i = 0; i < count; i++) {
+			MailItem mailItem = items[i].getMailItem();
+			weight[i] = 1 + Math.sqrt(mailItem instanceof PriorityMailItem ?
+				((PriorityMailItem) mailItem).getPriorityLevel() : 0);
+			age[i] = now - mailItem.getArrivalTime();
+			floor[i] = items[i].getDestination();
+			robotsNeeded[i] = items[i].getNumOfNeededRobots();
+			lowerBound[i] = score(i, soloTime(i));
+			longestTrip = Math.max(longestTrip,
+				soloTime(i) + returnTime(floor[i]));
+			robotTime += weight[i] * PENALTY *
+				Math.pow(age[i] + soloTime(i), PENALTY - 1);
+		}
+		robotTime = count == 0 ? 0 : robotTime / count;
+		// An item left behind waits about a trip for the next robot back
+		for (int i = 0; i < count; i++) {
+			leftCost[i] = score(i, longestTrip + soloTime(i));
+		}
+	}
+
+	/**
+	 * Each robot in turn takes the next item in hand and the next light item
+	 * in its tube, as MailPool does one robot at a time
+	 */
+	private int[] greedy(int robots) {
+		int[] assignment = new int[count];
+		boolean[] taken = new boolean[count];
+		Arrays.fill(assignment, LEFT);
+		for (int i = 0; i < count; i++) {
+			if (taken[i]) {
+				continue;
+			}
+			if (robotsNeeded[i] > robots) {
+				break;
+			}
+			taken[i] = true;
+			robots -= robotsNeeded[i];
+			assignment[i] = ALONE;
+			if (robotsNeeded[i] == 1) {
+				for (int j = i + 1; j < count; j++) {
+					if (!taken[j] && robotsNeeded[j] == 1) {
+						taken[j] = true;
+						assignment[i] = j;
+						assignment[j] = TUBE_OFFSET + i;
+						break;
+					}
+				}
+			}
+		}
+		return assignment;
+	}
+
+	private void search(int first, int robots, double cost, double bound) {
+		if (++nodes > budget) {
+			return;
+		}
+		while (first < count && used[first]) {
+			first++;
+		}
+		if (first == count) {
+			if (cost < bestCost) {
+				bestCost = cost;
+				bestPartner = partner.clone();
+			}
+			return;
+		}
+		if (cost + bound >= bestCost) {
+			return;
+		}
+		int i = first;
+		used[i] = true;
+		double rest = bound - lowerBound[i];
+		if (robotsNeeded[i] == 1 && robots > 0) {
+			// hand with a tube item, either way round
+			for (int j = i + 1; j < count; j++) {
+				if (used[j] || robotsNeeded[j] != 1) {
+					continue;
+				}
+				used[j] = true;
+				for (int order = 0; order < 2; order++) {
+					int hand = order == 0 ? i : j;
+					int tube = order == 0 ? j : i;
+					partner[hand] = tube;
+					partner[tube] = TUBE_OFFSET + hand;
+					search(i + 1, robots - 1, cost + pairCost(hand, tube),
+						rest - lowerBound[j]);
+				}
+				used[j] = false;
+			}
+		}
+		if (robotsNeeded[i] <= robots) {
+			partner[i] = ALONE;
+			search(i + 1, robots - robotsNeeded[i], cost + soloCost(i), rest);
+		} else {
+			// only left behind when there are not enough robots to take it
+			partner[i] = LEFT;
+			search(i + 1, robots, cost + leftCost[i], rest);
+		}
+		used[i] = false;
+	}
+
+	private double cost(int[] assignment) {
+		double total = 0;
+		for (int i = 0; i < count; i++) {
+			if (assignment[i] == LEFT) {
+				total += leftCost[i];
+			} else if (assignment[i] == ALONE) {
+				total += soloCost(i);
+			} else if (assignment[i] < TUBE_OFFSET) {
+				total += pairCost(i, assignment[i]);
+			}
+		}
+		return total;
+	}
+
+	private double soloCost(int i) {
+		double trip = soloTime(i) + returnTime(floor[i]);
+		return score(i, soloTime(i)) + robotTime * robotsNeeded[i] * trip;
+	}
+
+	private double pairCost(int hand, int tube) {
+		int handTime = floor[hand];
+		int tubeTime = handTime + Math.abs(floor[tube] - floor[hand]) + 1;
+		double trip = tubeTime + returnTime(floor[tube]);
+		return score(hand, handTime) + score(tube, tubeTime) + robotTime * trip;
+	}
+
+	/**
+	 * @return ticks from leaving the mailroom to delivering the item alone
+	 */
+	private int soloTime(int i) {
+		int floors = floor[i] - Building.MAILROOM_LOCATION;
+		return floors * (robotsNeeded[i] == 1 ? Robot.INDIVIDUAL_MOVEMENT_COST :
+			Robot.TEAM_MOVEMENT_COST) + 1;
+	}
+
+	/**
+	 * @return ticks from a delivery back to being loaded in the mailroom
+	 */
+	private static int returnTime(int fromFloor) {
+		return (fromFloor - Building.MAILROOM_LOCATION) *
+			Robot.INDIVIDUAL_MOVEMENT_COST + 2;
+	}
+
+	private double score(int i, double time) {
+		return weight[i] * Math.pow(age[i] + time, PENALTY);
+	}
+}
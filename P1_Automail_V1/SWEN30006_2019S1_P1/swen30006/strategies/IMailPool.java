@@ -1,6 +1,7 @@
 package strategies;
 
 import automail.MailItem;
+import automail.PriorityMailItem;
 import automail.Robot;
 import exceptions.ItemTooHeavyException;
 
@@ -30,4 +31,25 @@ public interface IMailPool {
      */	
 	void registerWaiting(Robot robot);
 
+	/**
+	 * @param robot refers to a robot in the mailroom which is going out of
+	 * 	service, it is no longer waiting and leaves any team it was joining
+	 */
+	void deregister(Robot robot);
+
+	/**
+	 * A priority item has just arrived and been added to the pool. The pool 
+	 * may change the load of robots that have not left yet to deliver it
+	 * sooner.
+	 * @param mailItem the priority item that arrived
+	 * @param robots every robot of the fleet
+	 * @return whether any robot's load was changed
+	 */
+	boolean priorityArrival(PriorityMailItem mailItem, Robot[] robots);
+
+	/**
+	 * @return the number of mail items waiting in the pool
+	 */
+	int getPoolSize();
+
 }
@@ -0,0 +1,49 @@
+package strategies;
+
+import java.util.List;
+
+import automail.Item;
+import automail.MailItem;
+
+/**
+ * The order in which the mail pool hands out its items. Implementations
+ * decide which waiting item is delivered next.
+ */
+public interface ItemQueue {
+
+	/**
+	 * @param item an item waiting for delivery
+	 */
+	void add(Item item);
+
+	/**
+	 * @return the item to deliver next, removed from the queue, or null if
+	 * 	the queue is empty
+	 */
+	Item poll();
+
+	/**
+	 * @return the item to deliver next among those a single robot can carry,
+	 * 	removed from the queue, or null if there is none
+	 */
+	Item pollLight();
+
+	/**
+	 * @param count how many items to look at
+	 * @return up to count items in the order they would be handed out, they
+	 * 	are left in the queue
+	 */
+	List<Item> peek(int count);
+
+	/**
+	 * Take a particular item out of the queue
+	 * @param mailItem the mail item of the item
+	 * @return the item removed, or null if it was not in the queue
+	 */
+	Item remove(MailItem mailItem);
+
+	/**
+	 * @return the number of items in the queue
+	 */
+	int size();
+}
@@ -1,12 +1,16 @@
 package strategies;
 
-import java.util.LinkedList;
-import java.util.Comparator;
-import java.util.ListIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
 
+import automail.Clock;
 import automail.Item;
 import automail.MailItem;
+import automail.PriorityMailItem;
 import automail.Robot;
+import automail.Simulation;
+import automail.SimulationEvents;
 import exceptions.ItemAllocationException;
 import exceptions.ItemTooHeavyException;
 
@@ -15,50 +19,72 @@ public class MailPool implements IMailPool {
 	 * item is waiting for enough delivery robots to delivery
 	 */
 	private Item unfinishedItem = null;
-	private LinkedList<Item> pool;
-	private LinkedList<Robot> robots;
+	private ItemQueue pool;
+	/** Waiting robots, in an array list as registering is done every trip */
+	private List<Robot> robots;
+	/**
+	 * Score an arriving priority item must gain before robots' loads are
+	 * changed for it, infinite when they never are
+	 */
+	private double preemptionThreshold = Double.POSITIVE_INFINITY;
+	/** Shares out items among all waiting robots, null to load one by one */
+	private BatchAssignment assignment = null;
 	
-	public class ItemComparator implements Comparator<Item> {
-		@Override
-		public int compare(Item i1, Item i2) {
-			int order = 0;
-			if (i1.getPriority() < i2.getPriority()) {
-				order = 1;
-			} else if (i1.getPriority() > i2.getPriority()) {
-				order = -1;
-			} else if (i1.getDestination() < i2.getDestination()) {
-				order = 1;
-			} else if (i1.getDestination() > i2.getDestination()) {
-				order = -1;
-			}
-			return order;
-		}
+	public MailPool(int nrobots){
+		this(nrobots, new PriorityItemQueue());
 	}
 	
-	public MailPool(int nrobots){
+	/**
+	 * @param pool decides the order in which items are delivered
+	 */
+	public MailPool(int nrobots, ItemQueue pool){
 		// Start empty
-		pool = new LinkedList<Item>();
-		robots = new LinkedList<Robot>();
+		this.pool = pool;
+		robots = new ArrayList<Robot>();
+	}
+
+	/**
+	 * @param preemptionThreshold score an arriving priority item must gain
+	 * 	before robots' loads are changed for it
+	 */
+	public void setPreemptionThreshold(double preemptionThreshold) {
+		this.preemptionThreshold = preemptionThreshold;
+	}
+
+	/**
+	 * Load all waiting robots together each tick rather than one by one
+	 * @param budget most search nodes spent on one assignment
+	 */
+	public void setAssignmentBudget(long budget) {
+		assignment = new BatchAssignment(budget);
 	}
 
 	public void addToPool(MailItem mailItem) {
-		Item item;
-		try {
-			item = new Item(mailItem);
-			pool.add(item);
-		} catch (ItemTooHeavyException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		pool.sort(new ItemComparator());
+		pool.add(new Item(mailItem));
 	}
 	
 	@Override
 	public void step() {
-		ListIterator<Robot> availableRobotItr = robots.listIterator();
-		while (availableRobotItr.hasNext()) {
+		if (assignment != null && unfinishedItem == null && robots.size() > 1) {
+			try {
+				assignBatch();
+			} catch (Exception | ItemAllocationException e) {
+				// the load that failed is back in the pool, and the robots
+				// left are loaded one at a time below
+				e.printStackTrace();
+			}
+		}
+		// anything the batch left is loaded one robot at a time, there is
+		// nothing to do most ticks
+		if (robots.isEmpty() || (pool.size() == 0 && unfinishedItem == null)) {
+			return;
+		}
+		// by index rather than an iterator, which would be made every tick
+		int next = 0;
+		while (next < robots.size()) {
+			boolean loaded = false;
 			try {
-				loadRobot(availableRobotItr);
+				loaded = loadRobot(robots.get(next));
 			} catch (Exception e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
@@ -66,83 +92,157 @@ public class MailPool implements IMailPool {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
 			}
+			if (loaded) {
+				robots.remove(next);
+			} else {
+				next++;
+			}
 		} 
 	}
 	
-	private void loadRobot(ListIterator<Robot> availableRobotList) 
+	/**
+	 * Share out the items at the head of the pool among all waiting robots,
+	 * two items for each robot are considered. If a load cannot be given,
+	 * its items go back to the pool and its robots wait again, loads already
+	 * given are kept.
+	 * @throws Exception
+	 * @throws ItemAllocationException 
+	 */
+	private void assignBatch() throws Exception, ItemAllocationException {
+		List<Item> window = pool.peek(2 * robots.size());
+		for (BatchAssignment.Load load : 
+			assignment.solve(window, robots.size())) {
+			pool.remove(load.hand.getMailItem());
+			if (load.tube != null) {
+				pool.remove(load.tube.getMailItem());
+			}
+			Robot robot = null;
+			try {
+				for (int i = 0; i < load.hand.getNumOfNeededRobots(); i++) {
+					robot = robots.get(0);
+					load.hand.robotAdd(robot);
+					robots.remove(0);
+					robot.addToHand(load.hand.getMailItem());
+					// only a robot carrying alone is given a tube item
+					SimulationEvents.allocation(robot, load.hand.getMailItem(),
+						load.tube == null ? null : load.tube.getMailItem(),
+						"batch");
+				}
+				if (load.tube != null) {
+					robot.addToTube(load.tube.getMailItem());
+				}
+			} catch (Exception | ItemAllocationException e) {
+				// each robot that joined drops the hand item and waits again
+				while (load.hand.releaseRobot(true) != null) {
+				}
+				pool.add(load.hand);
+				if (load.tube != null) {
+					pool.add(load.tube);
+				}
+				throw e;
+			}
+			load.hand.acquiredRobotsDispatch();
+		}
+	}
+	
+	/**
+	 * @return whether the robot was loaded, and is no longer waiting
+	 */
+	private boolean loadRobot(Robot robot) 
 		throws Exception, ItemAllocationException {
 		// meet the heavier mail item request
 		if (unfinishedItem != null) {
-			continueUnfinishedItem(availableRobotList);
+			return continueUnfinishedItem(robot);
 		} 
 		// start a new item allocation
 		else {
-			newItemAllocation(availableRobotList);
+			return newItemAllocation(robot);
 		}
 	}
 	
 	/**
 	 * Allocate robot to help delivery unfinished item. 
-	 * @param availableRobotList
+	 * @param robot a waiting robot
+	 * @return true, once the robot has joined the team
 	 * @throws ItemTooHeavyException
 	 * @throws ItemAllocationException 
 	 */
-	private void continueUnfinishedItem (ListIterator<Robot> availableRobotList)
+	private boolean continueUnfinishedItem(Robot robot)
 		throws ItemAllocationException, ItemTooHeavyException {
-		Robot robot = availableRobotList.next();
 		assert (robot.isEmpty());
 		if (unfinishedItem == null) {
 			throw new ItemAllocationException();
 		}
 		robot.addToHand(unfinishedItem.getMailItem());
 		unfinishedItem.robotAdd(robot);
-		availableRobotList.remove();
+		SimulationEvents.allocation(robot, unfinishedItem.getMailItem(), null,
+			"team");
 		if (unfinishedItem.getCurrentNumAcquiredRobots() ==
 			unfinishedItem.getNumOfNeededRobots()) {
 			unfinishedItem.acquiredRobotsDispatch();
 			unfinishedItem = null;
 		}
+		return true;
 	}
 	
 	/**
 	 * pick a item from the pool according to the priority to delivery
-	 * @param availableRobotList
+	 * @param robot a waiting robot
+	 * @return whether there was an item for the robot
 	 * @throws Exception
 	 * @throws ItemAllocationException 
 	 */
-	private void newItemAllocation(ListIterator<Robot> availableRobotList) 
+	private boolean newItemAllocation(Robot robot) 
 		throws Exception, ItemAllocationException {
-		ListIterator<Item> poolLtr = pool.listIterator();
-		Robot robot = availableRobotList.next();
 		assert (robot.isEmpty());
 		if (pool.size() > 0) {
+			allocate(robot, pool.poll(), "greedy");
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Put an item in the hand of a robot, and a light item in its tube if
+	 * the robot can carry it alone
+	 * @param decision how the robot came to be given the item
+	 * @throws Exception
+	 * @throws ItemAllocationException 
+	 */
+	private void allocate(Robot robot, Item nextItem, String decision)
+		throws Exception, ItemAllocationException {
+		try {
+			// hand first as we want higher priority delivered first
+			nextItem.robotAdd(robot);
+			robot.addToHand(nextItem.getMailItem()); 
+		} catch (Exception | ItemAllocationException e) {
+			// leave the item in the pool
+			nextItem.robotRemove(robot);
+			pool.add(nextItem);
+			throw e;
+		}
+		MailItem tubeItem = null;
+		// only add tube item when hand a light item
+		if (nextItem.getHeavierMark() == false &&
+			(tubeItem = getLightMailItem()) != null) {
 			try {
-				Item nextItem = poolLtr.next();
-				// hand first as we want higher priority delivered first
-				nextItem.robotAdd(robot);
-				robot.addToHand(nextItem.getMailItem()); 
-				poolLtr.remove();
-
-				MailItem tubeItem = null;
-				// only add tube item when hand a light item
-				if (nextItem.getHeavierMark() == false &&
-					(tubeItem = getLightMailItem()) != null) {
-					robot.addToTube(tubeItem);
-				}
-
-				// begin to dispatch if the item is not a heavier item
-				if (nextItem.getCurrentNumAcquiredRobots() ==
-					nextItem.getNumOfNeededRobots()) {
-					nextItem.acquiredRobotsDispatch();
-				} else {
-					unfinishedItem = nextItem;
-				}
-				// remove from mailPool queue
-				availableRobotList.remove(); 
-			} catch (Exception e) {
+				robot.addToTube(tubeItem);
+			} catch (ItemTooHeavyException e) {
+				// the robot goes with its hand item alone
+				addToPool(tubeItem);
 				throw e;
 			}
 		}
+		SimulationEvents.allocation(robot, nextItem.getMailItem(), tubeItem,
+			decision);
+
+		// begin to dispatch if the item is not a heavier item
+		if (nextItem.getCurrentNumAcquiredRobots() ==
+			nextItem.getNumOfNeededRobots()) {
+			nextItem.acquiredRobotsDispatch();
+		} else {
+			unfinishedItem = nextItem;
+		}
 	}
 	
 	/**
@@ -155,24 +255,86 @@ public class MailPool implements IMailPool {
 	 * @author yuqiangz
 	 */
 	private MailItem getLightMailItem() {
-		if (pool.size() == 0) {
-			return null;
+		Item lightItem = pool.pollLight();
+		return lightItem == null ? null : lightItem.getMailItem();
+	}
+	
+	/**
+	 * Nothing is changed while a robot is waiting, it takes the item anyway.
+	 * Otherwise a robot still in the mailroom may swap its tube item for the
+	 * priority item, or failing that a robot may leave a team still forming
+	 * for a heavier item and take the priority item instead. Either is done
+	 * only when the priority item's score saved, less the score lost by the
+	 * item it displaces, reaches the threshold. Both items are assumed to be
+	 * otherwise delayed until the next robot is back.
+	 */
+	@Override
+	public boolean priorityArrival(PriorityMailItem mailItem, Robot[] fleet) {
+		if (!robots.isEmpty() ||
+			mailItem.getWeight() > Robot.INDIVIDUAL_MAX_WEIGHT) {
+			return false;
 		}
-		ListIterator<Item> poolItr = pool.listIterator();
-		Item lightItem = poolItr.next();
-		while(lightItem.getHeavierMark() == true) {
-			if(poolItr.hasNext()) {
-				lightItem = poolItr.next();
-			} else {
-				lightItem = null;
-				break;
+		double wait = Double.POSITIVE_INFINITY;
+		for (Robot robot : fleet) {
+			if (robot.current_state != Robot.RobotState.WAITING) {
+				wait = Math.min(wait, robot.getTimeToMailroom() + 1);
 			}
 		}
-		if (lightItem == null) {
-			return null;
-		}	
-		poolItr.remove();
-		return lightItem.getMailItem();
+		double saved = delayCost(mailItem, wait);
+		Robot swapRobot = null;
+		double bestGain = preemptionThreshold;
+		for (Robot robot : fleet) {
+			if (robot.canSwapTube()) {
+				double gain = saved - delayCost(robot.getTube(), wait);
+				if (gain >= bestGain) {
+					swapRobot = robot;
+					bestGain = gain;
+				}
+			}
+		}
+		if (swapRobot != null) {
+			pool.remove(mailItem);
+			addToPool(swapRobot.swapTube(mailItem));
+			return true;
+		}
+		if (unfinishedItem != null &&
+			unfinishedItem.getCurrentNumAcquiredRobots() > 0 &&
+			saved - delayCost(unfinishedItem.getMailItem(), wait) >=
+			preemptionThreshold) {
+			Item item = pool.remove(mailItem);
+			// not registered as waiting again, a robot lent by another
+			// band would be waiting there while loaded here
+			Robot robot = unfinishedItem.releaseRobot(false);
+			try {
+				allocate(robot, item, "preempt");
+			} catch (Exception | ItemAllocationException e) {
+				// allocate left the priority item in the pool, the robot
+				// waits here and rejoins the team on the next step
+				robots.add(robot);
+				SimulationEvents.allocationFailure(robot, mailItem,
+					"preemption failed: " + e);
+				if (Simulation.VERBOSE) {
+					System.out.printf("T: %3d > %7s cannot be preempted for"
+						+ " [%s]: %s%n", Clock.Time(), robot.getIdTube(),
+						mailItem.toString(), e);
+				}
+				return false;
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return the score lost if an item sent now is held back by some ticks
+	 */
+	private static double delayCost(MailItem mailItem, double delay) {
+		double weight = 1 + Math.sqrt(mailItem instanceof PriorityMailItem ?
+			((PriorityMailItem) mailItem).getPriorityLevel() : 0);
+		double latency = Clock.Time() - mailItem.getArrivalTime() +
+			mailItem.getDestFloor();
+		return weight * (Math.pow(latency + delay, 1.2) -
+			Math.pow(latency, 1.2));
 	}
 	
 	@Override
@@ -183,4 +345,74 @@ public class MailPool implements IMailPool {
 		robots.add(robot);
 	}
 
+	@Override
+	public void deregister(Robot robot) {
+		robots.remove(robot);
+		if (unfinishedItem != null) {
+			unfinishedItem.robotRemove(robot);
+		}
+	}
+	
+	@Override
+	public int getPoolSize() {
+		return pool.size() + (unfinishedItem == null ? 0 : 1);
+	}
+
+	/**
+	 * Take out the items waiting in the pool that match, used to move them
+	 * to another pool
+	 */
+	List<MailItem> removeIf(Predicate<MailItem> filter) {
+		List<MailItem> removed = new ArrayList<MailItem>();
+		for (Item item : pool.peek(pool.size())) {
+			if (filter.test(item.getMailItem())) {
+				pool.remove(item.getMailItem());
+				removed.add(item.getMailItem());
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * @return robots the heavier item being formed needs in all, 0 if none
+	 */
+	int teamSize() {
+		return unfinishedItem == null ? 0 :
+			unfinishedItem.getNumOfNeededRobots();
+	}
+
+	/**
+	 * @return robots the heavier item being formed still needs, 0 if none
+	 */
+	int robotsStillNeeded() {
+		return unfinishedItem == null ? 0 : unfinishedItem.getNumOfNeededRobots()
+			- unfinishedItem.getCurrentNumAcquiredRobots();
+	}
+
+	/**
+	 * @return a waiting robot not promised to a heavier item, taken off the
+	 * 	waiting list, or null
+	 */
+	Robot lendRobot() {
+		if (unfinishedItem != null) {
+			return null;
+		}
+		return robots.isEmpty() ? null : robots.remove(robots.size() - 1);
+	}
+
+	/**
+	 * Give up the heavier item being formed and put it back in the pool, its
+	 * robots leave the team and wait again
+	 */
+	void abandonTeam() {
+		if (unfinishedItem == null) {
+			return;
+		}
+		while (unfinishedItem.releaseRobot(true) != null) {
+			// each robot registers as waiting again as it leaves
+		}
+		pool.add(unfinishedItem);
+		unfinishedItem = null;
+	}
+
 }
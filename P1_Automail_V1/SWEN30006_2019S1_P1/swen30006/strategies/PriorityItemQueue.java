@@ -0,0 +1,125 @@
+package strategies;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import automail.Item;
+import automail.MailItem;
+
+/**
+ * Hands out items by priority, then by destination from the top floor down.
+ * With a distance weight, each floor of height counts as that much priority,
+ * so far items can go ahead of near ones of slightly higher priority.
+ */
+public class PriorityItemQueue implements ItemQueue {
+
+	/**
+	 * Kept from last to first, so the next item is taken off the end and
+	 * nothing is allocated to add or take an item
+	 */
+	private ArrayList<Item> pool = new ArrayList<Item>();
+	private final ItemComparator comparator;
+	
+	public PriorityItemQueue() {
+		this(0);
+	}
+	
+	/**
+	 * @param distanceWeight priority each floor of height is worth, 0 for
+	 * 	strict priority order
+	 */
+	public PriorityItemQueue(double distanceWeight) {
+		comparator = new ItemComparator(distanceWeight);
+	}
+	
+	public static class ItemComparator implements Comparator<Item> {
+		private final double distanceWeight;
+		
+		public ItemComparator() {
+			this(0);
+		}
+		
+		public ItemComparator(double distanceWeight) {
+			this.distanceWeight = distanceWeight;
+		}
+		
+		@Override
+		public int compare(Item i1, Item i2) {
+			int order = 0;
+			// the same for every tick, so the pool never has to be resorted
+			double rank1 = i1.getPriority() + distanceWeight * i1.getDestination();
+			double rank2 = i2.getPriority() + distanceWeight * i2.getDestination();
+			if (rank1 < rank2) {
+				order = 1;
+			} else if (rank1 > rank2) {
+				order = -1;
+			} else if (i1.getDestination() < i2.getDestination()) {
+				order = 1;
+			} else if (i1.getDestination() > i2.getDestination()) {
+				order = -1;
+			}
+			return order;
+		}
+	}
+	
+	/**
+	 * The pool is always in order, so an item only has to be put in its 
+	 * place rather than sorting the whole pool again. It goes after items 
+	 * of the same order, as a stable sort would leave it, so below the items
+	 * that come after it, found by binary search.
+	 */
+	@Override
+	public void add(Item item) {
+		int low = 0;
+		int high = pool.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (comparator.compare(pool.get(middle), item) > 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		pool.add(low, item);
+	}
+	
+	@Override
+	public Item poll() {
+		return pool.isEmpty() ? null : pool.remove(pool.size() - 1);
+	}
+	
+	@Override
+	public Item pollLight() {
+		for (int i = pool.size() - 1; i >= 0; i--) {
+			if (pool.get(i).getHeavierMark() == false) {
+				return pool.remove(i);
+			}
+		}
+		return null;
+	}
+	
+	@Override
+	public List<Item> peek(int count) {
+		List<Item> head = new ArrayList<Item>(count);
+		for (int i = pool.size() - 1; i >= 0 && head.size() < count; i--) {
+			head.add(pool.get(i));
+		}
+		return head;
+	}
+	
+	@Override
+	public Item remove(MailItem mailItem) {
+		for (int i = pool.size() - 1; i >= 0; i--) {
+			if (pool.get(i).getMailItem() == mailItem) {
+				return pool.remove(i);
+			}
+		}
+		return null;
+	}
+	
+	@Override
+	public int size() {
+		return pool.size();
+	}
+}
@@ -0,0 +1,55 @@
+package strategies;
+
+import automail.Clock;
+import automail.MailClass;
+import automail.MailItem;
+
+/**
+ * Ledger of the mail turned away by Admission. Only counts are kept, so a
+ * long run rejecting much of its mail holds no more than a short one.
+ */
+public class Quarantine {
+
+	/** Items of each class, only rejected classes are counted */
+	private final long[] counts = new long[MailClass.values().length];
+	private long total = 0;
+	private long weight = 0;
+	private int heaviest = 0;
+	private long firstTime = -1;
+
+	public void add(MailItem mailItem, MailClass mailClass) {
+		counts[mailClass.ordinal()]++;
+		total++;
+		weight += mailItem.getWeight();
+		heaviest = Math.max(heaviest, mailItem.getWeight());
+		if (firstTime < 0) {
+			firstTime = Clock.Time();
+		}
+	}
+
+	/**
+	 * @return the number of items quarantined
+	 */
+	public long getCount() {
+		return total;
+	}
+
+	/**
+	 * @return the number of items quarantined as the given class
+	 */
+	public long getCount(MailClass mailClass) {
+		return counts[mailClass.ordinal()];
+	}
+
+	public void printResults() {
+		StringBuilder line = new StringBuilder("Quarantined: " + total);
+		for (MailClass mailClass : MailClass.values()) {
+			if (counts[mailClass.ordinal()] > 0) {
+				line.append(String.format(" | %s %d",
+					mailClass.name().toLowerCase(), counts[mailClass.ordinal()]));
+			}
+		}
+		System.out.println(line.append(String.format(" | %d g, heaviest %d g,"
+			+ " first at T: %d", weight, heaviest, firstTime)));
+	}
+}
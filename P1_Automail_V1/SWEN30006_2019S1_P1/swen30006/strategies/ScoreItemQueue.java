@@ -0,0 +1,165 @@
+package strategies;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import automail.Building;
+import automail.Clock;
+import automail.Item;
+import automail.MailItem;
+import automail.PriorityMailItem;
+import automail.Robot;
+
+/**
+ * Hands out the item whose score grows fastest while it waits, for each
+ * tick of robot time it takes to deliver. An item delivered at latency L
+ * scores w * L^1.2 with w = 1 + sqrt(priority), so it grows at
+ * 1.2 * w * L^0.2 while waiting, and it keeps k robots away for a round trip
+ * of R ticks. Ranking by 1.2 * w * L^0.2 / (k * R) is the generalized c-mu
+ * rule for convex waiting costs, so ageing items catch up with fresh ones.
+ *
+ * The rank changes every tick, but its fifth power is proportional to
+ * (w / (k * R))^5 * L, which is linear in time with a slope that only
+ * depends on priority, floor and team size. Items sharing those never change
+ * order among themselves, so they are kept in one class ordered by arrival
+ * and only the head of each class has to be compared. Choosing an item costs
+ * the number of classes, whatever the size of the pool.
+ */
+public class ScoreItemQueue implements ItemQueue {
+
+	private static final Comparator<Item> BY_ARRIVAL =
+		Comparator.comparingLong((Item item) -> item.getMailItem().getArrivalTime())
+			.thenComparingInt(item -> item.getMailItem().hashCode());
+
+	/** Items of the same priority, floor and team size */
+	private static class ItemClass {
+		final PriorityQueue<Item> items =
+			new PriorityQueue<Item>(BY_ARRIVAL);
+		/** (w / (k * R))^5 */
+		final double slope;
+		/** Ticks from leaving the mailroom to delivery */
+		final long delay;
+		final boolean light;
+
+		ItemClass(Item item) {
+			MailItem mailItem = item.getMailItem();
+			int floors = item.getDestination() - Building.MAILROOM_LOCATION;
+			int robots = item.getNumOfNeededRobots();
+			light = !item.getHeavierMark();
+			delay = floors * (light ? Robot.INDIVIDUAL_MOVEMENT_COST :
+				Robot.TEAM_MOVEMENT_COST) + 1;
+			// back down, then a tick to register and one to load
+			long roundTrip = delay + floors * Robot.INDIVIDUAL_MOVEMENT_COST + 2;
+			double weight = 1 + Math.sqrt(mailItem instanceof PriorityMailItem ?
+				((PriorityMailItem) mailItem).getPriorityLevel() : 0);
+			slope = Math.pow(weight / (robots * roundTrip), 5);
+		}
+
+		/**
+		 * @return the fifth power of the rank of the head, up to a constant
+		 */
+		double rank(long now) {
+			return slope * (now - items.peek().getMailItem().getArrivalTime()
+				+ delay);
+		}
+	}
+
+	private final Map<Long, ItemClass> classByKey = new HashMap<Long, ItemClass>();
+	private final List<ItemClass> classes = new ArrayList<ItemClass>();
+	private int size = 0;
+
+	/**
+	 * @return the key of the class of the item, made of its priority, team 
+	 * 	size and floor
+	 */
+	private static long key(MailItem mailItem) {
+		long priority = mailItem instanceof PriorityMailItem ?
+			((PriorityMailItem) mailItem).getPriorityLevel() : 0;
+		int robots = mailItem.getWeight() <= Robot.INDIVIDUAL_MAX_WEIGHT ? 1 :
+			mailItem.getWeight() <= Robot.PAIR_MAX_WEIGHT ? 2 : 3;
+		return priority << 32 | robots << 24 | mailItem.getDestFloor();
+	}
+
+	@Override
+	public void add(Item item) {
+		long key = key(item.getMailItem());
+		ItemClass itemClass = classByKey.get(key);
+		if (itemClass == null) {
+			itemClass = new ItemClass(item);
+			classByKey.put(key, itemClass);
+			classes.add(itemClass);
+		}
+		itemClass.items.add(item);
+		size++;
+	}
+
+	@Override
+	public Item poll() {
+		return pollBest(false);
+	}
+
+	@Override
+	public Item pollLight() {
+		return pollBest(true);
+	}
+
+	private Item pollBest(boolean lightOnly) {
+		long now = Clock.Time();
+		ItemClass best = null;
+		double bestRank = 0;
+		for (ItemClass itemClass : classes) {
+			if (itemClass.items.isEmpty() || (lightOnly && !itemClass.light)) {
+				continue;
+			}
+			double rank = itemClass.rank(now);
+			if (best == null || rank > bestRank) {
+				best = itemClass;
+				bestRank = rank;
+			}
+		}
+		if (best == null) {
+			return null;
+		}
+		size--;
+		return best.items.poll();
+	}
+
+	@Override
+	public List<Item> peek(int count) {
+		List<Item> head = new ArrayList<Item>(count);
+		Item item;
+		while (head.size() < count && (item = poll()) != null) {
+			head.add(item);
+		}
+		// classes keep arrival order, so putting them back restores the queue
+		for (Item polled : head) {
+			add(polled);
+		}
+		return head;
+	}
+
+	@Override
+	public Item remove(MailItem mailItem) {
+		ItemClass itemClass = classByKey.get(key(mailItem));
+		if (itemClass == null) {
+			return null;
+		}
+		for (Item item : itemClass.items) {
+			if (item.getMailItem() == mailItem) {
+				itemClass.items.remove(item);
+				size--;
+				return item;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
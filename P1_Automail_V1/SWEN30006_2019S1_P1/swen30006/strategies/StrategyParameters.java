@@ -0,0 +1,170 @@
+package strategies;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The knobs of the mail pool strategies as a space of typed properties, to
+ * be searched rather than set by hand. A space is written as parameters
+ * separated by ;, each name=spec where spec is one of
+ *
+ *   a,b,c             one of the values
+ *   int:low..high     a whole number from low to high
+ *   real:low..high    a number from low to high
+ *
+ * and a range ending in :log is drawn evenly on a log scale, for knobs
+ * whose effect goes with their order of magnitude.
+ */
+public class StrategyParameters {
+
+	/** Every knob the mail pool reads from the properties */
+	public static final String DEFAULT_SPACE = "Dispatch=priority,score;"
+		+ "Distance_Weight=real:0..10;Assignment=greedy,batch;"
+		+ "Assignment_Budget=int:1000..100000:log;"
+		+ "Preemption_Threshold=real:1..1000:log;Zones=int:1..3;"
+		+ "Zone_Rebalance=int:50..1000:log";
+
+	/** One knob and the values it may take */
+	public abstract static class Parameter {
+		public final String name;
+
+		Parameter(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * @return a value drawn evenly from the parameter's values
+		 */
+		public abstract String sample(Random random);
+	}
+
+	static class Choice extends Parameter {
+		private final String[] values;
+
+		Choice(String name, String[] values) {
+			super(name);
+			this.values = values;
+		}
+
+		@Override
+		public String sample(Random random) {
+			return values[random.nextInt(values.length)];
+		}
+	}
+
+	static class Range extends Parameter {
+		private final double low;
+		private final double high;
+		private final boolean integer;
+		private final boolean log;
+
+		Range(String name, double low, double high, boolean integer,
+			boolean log) {
+			super(name);
+			if (high < low || (log && low <= 0)) {
+				throw new IllegalArgumentException("Bad range for " + name);
+			}
+			this.low = low;
+			this.high = high;
+			this.integer = integer;
+			this.log = log;
+		}
+
+		@Override
+		public String sample(Random random) {
+			double u = random.nextDouble();
+			if (integer) {
+				// a whole number is drawn as the floor of a number up to
+				// high + 1, so high is as likely as low
+				double top = high + 1;
+				double value = log ? low * Math.pow(top / low, u) :
+					low + u * (top - low);
+				return String.valueOf(Math.min((long) value, (long) high));
+			}
+			double value = log ? low * Math.pow(high / low, u) :
+				low + u * (high - low);
+			// four figures are as many as make a difference, and read well
+			return new BigDecimal(value).round(new MathContext(4))
+				.stripTrailingZeros().toPlainString();
+		}
+	}
+
+	private final List<Parameter> parameters;
+
+	private StrategyParameters(List<Parameter> parameters) {
+		this.parameters = Collections.unmodifiableList(parameters);
+	}
+
+	/**
+	 * @param space parameters as described above
+	 */
+	public static StrategyParameters parse(String space) {
+		List<Parameter> parameters = new ArrayList<Parameter>();
+		for (String setting : space.split(";")) {
+			if (setting.trim().isEmpty()) {
+				continue;
+			}
+			int equals = setting.indexOf('=');
+			if (equals <= 0) {
+				throw new IllegalArgumentException("Unknown parameter: " + setting);
+			}
+			String name = setting.substring(0, equals).trim();
+			String spec = setting.substring(equals + 1).trim();
+			boolean integer = spec.startsWith("int:");
+			if (integer || spec.startsWith("real:")) {
+				String range = spec.substring(spec.indexOf(':') + 1);
+				boolean log = range.endsWith(":log");
+				if (log) {
+					range = range.substring(0, range.length() - ":log".length());
+				}
+				int dots = range.indexOf("..");
+				if (dots < 0) {
+					throw new IllegalArgumentException("Bad range for " + name);
+				}
+				parameters.add(new Range(name,
+					Double.parseDouble(range.substring(0, dots)),
+					Double.parseDouble(range.substring(dots + 2)), integer, log));
+			} else {
+				parameters.add(new Choice(name, spec.split(",")));
+			}
+		}
+		return new StrategyParameters(parameters);
+	}
+
+	public List<Parameter> getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * @return a configuration drawn from the space, a value for each
+	 * 	parameter in the order of the space
+	 */
+	public Map<String, String> sample(Random random) {
+		Map<String, String> config = new LinkedHashMap<String, String>();
+		for (Parameter parameter : parameters) {
+			config.put(parameter.name, parameter.sample(random));
+		}
+		return config;
+	}
+
+	/**
+	 * @return the configuration as Sweep_Configs and MonteCarlo_Configs
+	 * 	write one, key=value separated by ;
+	 */
+	public static String format(Map<String, String> config) {
+		StringBuilder text = new StringBuilder();
+		for (Map.Entry<String, String> setting : config.entrySet()) {
+			if (text.length() > 0) {
+				text.append(';');
+			}
+			text.append(setting.getKey()).append('=').append(setting.getValue());
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,251 @@
+package strategies;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import automail.Building;
+import automail.Clock;
+import automail.MailItem;
+import automail.PriorityMailItem;
+import automail.Robot;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * Splits the building into bands of floors, each with its own robots and its
+ * own MailPool, so robots make short trips within their band and each pool
+ * only orders the items for its floors.
+ *
+ * Bands start with the same expected robot time each, a trip to a floor
+ * taking time in proportion to its height, so lower bands span more floors.
+ * Every rebalance interval a boundary moves one floor away from a band whose
+ * pool has been clearly deeper than its neighbour's, and the items for that
+ * floor move with it. A heavier item is delivered by robots of its own band
+ * when the band has enough, otherwise robots waiting in other bands join the
+ * team ahead of their own band's items.
+ */
+public class ZonedMailPool implements IMailPool {
+
+	/** How much deeper a pool must be than its neighbour to give a floor */
+	private static final double IMBALANCE = 1.5;
+	/** Weight of the latest pool depth in the running average */
+	private static final double SMOOTHING = 0.05;
+
+	private final MailPool[] zones;
+	/** Highest floor of each band, the last one is the top floor */
+	private final int[] upper;
+	private final int[] fleet;
+	private final double[] depth;
+	private final Map<Robot, Integer> home = new HashMap<Robot, Integer>();
+	private final int nrobots;
+	private final int rebalanceInterval;
+
+	/**
+	 * @param nrobots robots in the fleet, shared out evenly between bands
+	 * @param nzones number of bands, at most the number of robots or floors
+	 * @param rebalanceInterval ticks between boundary moves, 0 for never
+	 * @param zonePool makes the pool of each band
+	 */
+	public ZonedMailPool(int nrobots, int nzones, int rebalanceInterval,
+		Supplier<MailPool> zonePool) {
+		// a band with no robots would never have its mail picked up
+		if (nzones < 1 || nzones > nrobots || nzones > Building.FLOORS) {
+			throw new IllegalArgumentException("Zones must be from 1 to the"
+				+ " number of robots and of floors: " + nzones);
+		}
+		this.nrobots = nrobots;
+		this.rebalanceInterval = rebalanceInterval;
+		zones = new MailPool[nzones];
+		upper = new int[nzones];
+		fleet = new int[nzones];
+		depth = new double[nzones];
+		for (int z = 0; z < nzones; z++) {
+			zones[z] = zonePool.get();
+		}
+		// equal shares of the sum of floor heights
+		double total = 0;
+		for (int floor = Building.LOWEST_FLOOR; floor <= Building.FLOORS;
+			floor++) {
+			total += floor;
+		}
+		double sum = 0;
+		int z = 0;
+		for (int floor = Building.LOWEST_FLOOR; floor <= Building.FLOORS;
+			floor++) {
+			sum += floor;
+			// leave at least a floor for each band above
+			if (z < nzones - 1 && (sum >= total * (z + 1) / nzones ||
+				Building.FLOORS - floor == nzones - 1 - z)) {
+				upper[z++] = floor;
+			}
+		}
+		upper[nzones - 1] = Building.FLOORS;
+	}
+
+	private int zoneOf(int floor) {
+		int z = 0;
+		while (floor > upper[z]) {
+			z++;
+		}
+		return z;
+	}
+
+	private int lowest(int z) {
+		return z == 0 ? Building.LOWEST_FLOOR : upper[z - 1] + 1;
+	}
+
+	@Override
+	public void addToPool(MailItem mailItem) {
+		zones[zoneOf(mailItem.getDestFloor())].addToPool(mailItem);
+	}
+
+	@Override
+	public void step() throws ItemTooHeavyException {
+		lendRobots();
+		for (MailPool zone : zones) {
+			zone.step();
+		}
+		for (int z = 0; z < zones.length; z++) {
+			depth[z] += SMOOTHING * (zones[z].getPoolSize() - depth[z]);
+		}
+		if (rebalanceInterval > 0 && Clock.Time() > 0 &&
+			Clock.Time() % rebalanceInterval == 0) {
+			rebalance();
+		}
+	}
+
+	/**
+	 * Robots waiting in other bands join heavier items in bands with too few
+	 * robots for them, before their own bands load them. Two such bands
+	 * could each hold a robot while waiting for the other's, so when there
+	 * are not enough free robots, higher bands give up their teams to the
+	 * lowest.
+	 */
+	private void lendRobots() {
+		for (int z = 0; z < zones.length; z++) {
+			int needed = zones[z].robotsStillNeeded();
+			if (needed == 0 || fleet[z] >= zones[z].teamSize()) {
+				continue;
+			}
+			needed = lendTo(z, needed);
+			if (needed == 0) {
+				continue;
+			}
+			for (int other = z + 1; other < zones.length; other++) {
+				if (zones[other].robotsStillNeeded() > 0 &&
+					fleet[other] < zones[other].teamSize()) {
+					zones[other].abandonTeam();
+				}
+			}
+			lendTo(z, needed);
+		}
+	}
+
+	/**
+	 * @return robots still needed after those free in other bands have come
+	 */
+	private int lendTo(int z, int needed) {
+		for (int other = 0; other < zones.length && needed > 0; other++) {
+			Robot robot;
+			while (other != z && needed > 0 &&
+				(robot = zones[other].lendRobot()) != null) {
+				zones[z].registerWaiting(robot);
+				needed--;
+			}
+		}
+		return needed;
+	}
+
+	/**
+	 * Move each boundary one floor away from a band clearly deeper than the
+	 * band on the other side of it
+	 */
+	private void rebalance() {
+		for (int z = 0; z < zones.length - 1; z++) {
+			if (depth[z] > IMBALANCE * depth[z + 1] + 1 &&
+				upper[z] > lowest(z)) {
+				moveFloor(upper[z], z, z + 1);
+				upper[z]--;
+			} else if (depth[z + 1] > IMBALANCE * depth[z] + 1 &&
+				upper[z + 1] > upper[z] + 1) {
+				moveFloor(upper[z] + 1, z + 1, z);
+				upper[z]++;
+			}
+		}
+	}
+
+	private void moveFloor(int floor, int from, int to) {
+		for (MailItem mailItem :
+			zones[from].removeIf(item -> item.getDestFloor() == floor)) {
+			zones[to].addToPool(mailItem);
+		}
+	}
+
+	/**
+	 * A robot joins the band with the fewest robots the first time it
+	 * registers, and always returns to that band's pool
+	 */
+	@Override
+	public void registerWaiting(Robot robot) {
+		Integer z = home.get(robot);
+		if (z == null) {
+			z = 0;
+			for (int other = 1; other < zones.length; other++) {
+				if (fleet[other] < fleet[z]) {
+					z = other;
+				}
+			}
+			fleet[z]++;
+			home.put(robot, z);
+			assert(home.size() <= nrobots);
+		}
+		zones[z].registerWaiting(robot);
+	}
+
+	@Override
+	public void deregister(Robot robot) {
+		for (MailPool zone : zones) {
+			zone.deregister(robot);
+		}
+	}
+
+	/**
+	 * Only robots of the item's band have their load changed
+	 */
+	@Override
+	public boolean priorityArrival(PriorityMailItem mailItem, Robot[] robots) {
+		int z = zoneOf(mailItem.getDestFloor());
+		List<Robot> band = new ArrayList<Robot>();
+		for (Robot robot : robots) {
+			Integer robotZone = home.get(robot);
+			if (robotZone != null && robotZone == z) {
+				band.add(robot);
+			}
+		}
+		return zones[z].priorityArrival(mailItem, band.toArray(new Robot[0]));
+	}
+
+	@Override
+	public int getPoolSize() {
+		int size = 0;
+		for (MailPool zone : zones) {
+			size += zone.getPoolSize();
+		}
+		return size;
+	}
+
+	/**
+	 * @return the bands as lowest-highest floor separated by spaces, with the
+	 * 	robots of each
+	 */
+	public String describeZones() {
+		StringBuilder text = new StringBuilder();
+		for (int z = 0; z < zones.length; z++) {
+			text.append(String.format("%s%d-%d:%d", z == 0 ? "" : " ",
+				lowest(z), upper[z], fleet[z]));
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,87 @@
+package tools;
+
+import automail.PhaseTimer;
+import automail.Simulation;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Properties;
+
+/**
+ * Checks the bytes a quiet continuous run allocates in each phase of a tick
+ * against a budget, and fails when any phase or the whole run per delivery
+ * goes over, so a change that makes the tick allocate again is caught.
+ * Bytes are those of the simulation thread, counted by the JVM, from
+ * Allocation_Warmup ticks, once the pool has filled and the code has been
+ * compiled, for Allocation_Ticks more.
+ *
+ * Budgets are Allocation_Budget_ and the phase name, in bytes per tick, and
+ * Allocation_Per_Delivery for all phases together. New mail is made in
+ * GENERATE, so its budget grows with Arrival_Rate.
+ *
+ * Usage: java tools.AllocationBudget [properties file]
+ * Exits with status 1 when over budget.
+ */
+public class AllocationBudget {
+
+	/** Bytes per tick allowed each phase by default, in Phase order */
+	private static final double[] BUDGETS = {24, 0, 0, 2, 2, 0};
+
+	public static void main(String[] args) throws IOException {
+		Properties automailProperties = Simulation.loadProperties(
+			args.length > 0 ? args[0] : "automail.properties");
+		long warmup = Long.parseLong(automailProperties.getProperty(
+			"Allocation_Warmup", "100000"));
+		long ticks = Long.parseLong(automailProperties.getProperty(
+			"Allocation_Ticks", "200000"));
+		automailProperties.setProperty("Mode", "continuous");
+		automailProperties.setProperty("Verbose", "false");
+		automailProperties.setProperty("Stats_Window", "0");
+		automailProperties.setProperty("Profile", "true");
+		automailProperties.setProperty("Flight_Events", "false");
+		automailProperties.setProperty("Warmup", String.valueOf(warmup));
+		automailProperties.setProperty("Duration",
+			String.valueOf(warmup + ticks));
+		automailProperties.remove("Delivery_Log");
+		HashMap<Boolean, Integer> seedMap = new HashMap<>();
+		String seed = automailProperties.getProperty("Seed");
+		if (seed != null) {
+			seedMap.put(true, Integer.parseInt(seed));
+		}
+		Simulation simulation = new Simulation(automailProperties, seedMap);
+		PhaseTimer phases = simulation.getPhases();
+		if (!phases.countsBytes()) {
+			System.out.println("This JVM does not count allocated bytes");
+			System.exit(1);
+		}
+		simulation.run();
+
+		boolean over = false;
+		long total = 0;
+		System.out.printf("Over %d ticks from %d:%n", phases.getTicks(), warmup);
+		System.out.printf("  %-10s %10s %10s%n", "Phase", "B/tick", "Budget");
+		for (PhaseTimer.Phase phase : PhaseTimer.Phase.values()) {
+			double budget = Double.parseDouble(automailProperties.getProperty(
+				"Allocation_Budget_" + phase.name(),
+				String.valueOf(BUDGETS[phase.ordinal()])));
+			double perTick = (double) phases.getBytes(phase) / phases.getTicks();
+			total += phases.getBytes(phase);
+			over |= perTick > budget;
+			System.out.printf("  %-10s %10.2f %10.2f%s%n", phase, perTick,
+				budget, perTick > budget ? "  OVER" : "");
+		}
+		long delivered = simulation.getLatencies().getCount();
+		double perDelivery = delivered == 0 ? 0 : (double) total / delivered;
+		double deliveryBudget = Double.parseDouble(automailProperties
+			.getProperty("Allocation_Per_Delivery", "128"));
+		over |= perDelivery > deliveryBudget;
+		System.out.printf("  %-10s %10.2f B/delivery over %d deliveries, budget"
+			+ " %.2f%s%n", "All", perDelivery, delivered, deliveryBudget,
+			perDelivery > deliveryBudget ? "  OVER" : "");
+		if (over) {
+			System.out.println("Allocation over budget");
+			System.exit(1);
+		}
+		System.out.println("Allocation within budget");
+	}
+}
@@ -0,0 +1,213 @@
+package tools;
+
+import automail.DeliveryLog;
+import automail.LatencyHistogram;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latency percentiles and group-bys over a DeliveryLog, reading only the
+ * columns the query needs.
+ *
+ * Usage: java tools.DeliveryQuery file [summary | group key] [filter...]
+ *
+ * summary    count, score and latency percentiles of all deliveries
+ * group key  the same for each floor, weight (0 one robot, 1 a pair, 2
+ *            three), priority, robot, or window:N for each N ticks of
+ *            delivery time
+ *
+ * Filters are from=tick and to=tick on the delivery time, to leave out a
+ * warmup for example, and floor=, weight= and priority= to pick rows.
+ */
+public class DeliveryQuery {
+
+	/** What is known of the deliveries in one group */
+	private static class Group {
+		long count = 0;
+		double score = 0;
+		final LatencyHistogram latencies = new LatencyHistogram();
+
+		void add(int latency, double itemScore) {
+			count++;
+			score += itemScore;
+			latencies.record(latency);
+		}
+	}
+
+	private long from = Long.MIN_VALUE;
+	private long to = Long.MAX_VALUE;
+	private int floor = -1;
+	private int weight = -1;
+	private int priority = -1;
+	/** What rows are grouped by, null for a summary */
+	private String key = null;
+	private long window = 0;
+	private final Map<Long, Group> groups = new TreeMap<Long, Group>();
+	/** Groups of small keys such as floors, found without the map */
+	private final Group[] smallGroups = new Group[1024];
+	private long lastKey = -1;
+	private Group lastGroup = null;
+	private long blocks = 0;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.println("Usage: java tools.DeliveryQuery file"
+				+ " [summary | group key] [filter...]");
+			return;
+		}
+		DeliveryQuery query = new DeliveryQuery();
+		int arg = 1;
+		if (arg < args.length && args[arg].equals("summary")) {
+			arg++;
+		} else if (arg < args.length && args[arg].equals("group")) {
+			query.groupBy(args[arg + 1]);
+			arg += 2;
+		}
+		for (; arg < args.length; arg++) {
+			query.filter(args[arg]);
+		}
+		long start = System.nanoTime();
+		DeliveryLog.read(Paths.get(args[0]), query::scan);
+		query.printResults((System.nanoTime() - start) / 1e6);
+	}
+
+	private void groupBy(String name) {
+		if (name.startsWith("window:")) {
+			window = Long.parseLong(name.substring("window:".length()));
+			name = "window";
+			if (window <= 0) {
+				throw new IllegalArgumentException("Window must be positive: "
+					+ window);
+			}
+		} else if (name.equals("window")) {
+			throw new IllegalArgumentException("Window needs a size: window:N");
+		}
+		switch (name) {
+		case "floor":
+		case "weight":
+		case "priority":
+		case "robot":
+		case "window":
+			key = name;
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown group key: " + name);
+		}
+	}
+
+	private void filter(String setting) {
+		int equals = setting.indexOf('=');
+		if (equals < 0) {
+			throw new IllegalArgumentException("Unknown filter: " + setting);
+		}
+		long value = Long.parseLong(setting.substring(equals + 1));
+		switch (setting.substring(0, equals)) {
+		case "from":
+			from = value;
+			break;
+		case "to":
+			to = value;
+			break;
+		case "floor":
+			floor = (int) value;
+			break;
+		case "weight":
+			weight = (int) value;
+			break;
+		case "priority":
+			priority = (int) value;
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown filter: " + setting);
+		}
+	}
+
+	private void scan(DeliveryLog.Block block) {
+		blocks++;
+		boolean byTime = from != Long.MIN_VALUE || to != Long.MAX_VALUE;
+		Group all = key == null ? group(0) : null;
+		for (int row = 0; row < block.rows(); row++) {
+			if (byTime) {
+				long delivered = block.delivered(row);
+				if (delivered < from || delivered >= to) {
+					continue;
+				}
+			}
+			if ((floor >= 0 && block.floor(row) != floor) ||
+				(weight >= 0 && block.weightClass(row) != weight) ||
+				(priority >= 0 && block.priority(row) != priority)) {
+				continue;
+			}
+			int latency = block.latency(row);
+			double score = block.score(row);
+			if (all != null) {
+				all.add(latency, score);
+				continue;
+			}
+			switch (key) {
+			case "floor":
+				group(block.floor(row)).add(latency, score);
+				break;
+			case "weight":
+				group(block.weightClass(row)).add(latency, score);
+				break;
+			case "priority":
+				group(block.priority(row)).add(latency, score);
+				break;
+			case "robot":
+				// a team's delivery counts for every robot of it
+				for (int member = 0; member < 3; member++) {
+					int robot = block.robot(row, member);
+					if (robot >= 0) {
+						group(robot).add(latency, score);
+					}
+				}
+				break;
+			case "window":
+				group(block.delivered(row) / window * window)
+					.add(latency, score);
+				break;
+			}
+		}
+	}
+
+	private Group group(long value) {
+		if (value >= 0 && value < smallGroups.length) {
+			Group group = smallGroups[(int) value];
+			if (group == null) {
+				group = new Group();
+				smallGroups[(int) value] = group;
+				groups.put(value, group);
+			}
+			return group;
+		}
+		// windows come in runs of the same key
+		if (value != lastKey || lastGroup == null) {
+			lastGroup = groups.get(value);
+			if (lastGroup == null) {
+				lastGroup = new Group();
+				groups.put(value, lastGroup);
+			}
+			lastKey = value;
+		}
+		return lastGroup;
+	}
+
+	private void printResults(double millis) {
+		System.out.printf("%-10s %12s %16s %10s %8s %8s %8s %8s%n",
+			key == null ? "" : key, "Deliveries", "Score", "Mean", "p50", "p90",
+			"p99", "Max");
+		for (Map.Entry<Long, Group> entry : groups.entrySet()) {
+			Group group = entry.getValue();
+			System.out.printf("%-10s %12d %16.2f %10.1f %8d %8d %8d %8d%n",
+				key == null ? "all" : entry.getKey(), group.count, group.score,
+				group.latencies.getMean(), group.latencies.getPercentile(50),
+				group.latencies.getPercentile(90),
+				group.latencies.getPercentile(99), group.latencies.getMax());
+		}
+		System.out.printf("(%d blocks read in %.1f ms)%n", blocks, millis);
+	}
+}
@@ -0,0 +1,179 @@
+package tools;
+
+import automail.LatencyHistogram;
+import automail.MailClass;
+import automail.Robot;
+import automail.Simulation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds the highest mail arrival rate each fleet size can sustain, for
+ * capacity planning. A rate is sustainable when, for every probed seed, a
+ * continuous simulation ends with a bounded pool and its 99th percentile
+ * latency is under the target. The rate is found by doubling until a probe
+ * fails and then binary searching, each probe running its seeds in parallel.
+ * Mail follows the MailGenerator weight and priority distributions, only
+ * the arrival rate changes.
+ *
+ * A fleet smaller than the team the heaviest deliverable mail needs can
+ * never clear its pool at any rate, so it is reported as unsupported
+ * rather than searched.
+ *
+ * Usage: java tools.LoadTest [properties file]
+ */
+public class LoadTest {
+
+	private final Properties baseProperties;
+	private final int seed;
+	private final int seeds;
+	private final long duration;
+	private final long warmup;
+	private final long p99Target;
+	private final int maxPool;
+	private final double precision;
+	/** Robots the heaviest mail that is not quarantined needs */
+	private final int teamSize;
+	private final ExecutorService executor;
+
+	/** Result of the last sustainable probe of a search */
+	private double bestRate;
+	private LatencyHistogram bestLatencies;
+	private double bestThroughput;
+
+	public LoadTest(Properties automailProperties) {
+		baseProperties = automailProperties;
+		seed = Integer.parseInt(automailProperties.getProperty("Seed", "0"));
+		seeds = Integer.parseInt(
+			automailProperties.getProperty("LoadTest_Seeds", "4"));
+		duration = Long.parseLong(
+			automailProperties.getProperty("LoadTest_Duration", "20000"));
+		warmup = Long.parseLong(
+			automailProperties.getProperty("LoadTest_Warmup", "2000"));
+		p99Target = Long.parseLong(
+			automailProperties.getProperty("LoadTest_P99_Target", "200"));
+		maxPool = Integer.parseInt(
+			automailProperties.getProperty("LoadTest_Max_Pool", "50"));
+		precision = Double.parseDouble(
+			automailProperties.getProperty("LoadTest_Precision", "0.002"));
+		int heaviest = Math.min(Robot.TRIPLE_MAX_WEIGHT, Integer.parseInt(
+			automailProperties.getProperty("Mail_Max_Weight",
+			String.valueOf(Robot.TRIPLE_MAX_WEIGHT))));
+		teamSize = Math.max(1, MailClass.ofWeight(heaviest).robots);
+		int threads = Integer.parseInt(automailProperties.getProperty(
+			"LoadTest_Threads",
+			String.valueOf(Runtime.getRuntime().availableProcessors())));
+		executor = Executors.newFixedThreadPool(threads);
+	}
+
+	public static void main(String[] args) throws IOException,
+		InterruptedException, ExecutionException {
+		Properties automailProperties = Simulation.loadProperties(
+			args.length > 0 ? args[0] : "automail.properties");
+		String fleets =
+			automailProperties.getProperty("LoadTest_Fleets", "3,4,6,8");
+		LoadTest loadTest = new LoadTest(automailProperties);
+		try {
+			System.out.printf("%6s %12s %10s %10s %12s%n",
+				"Robots", "Rate/tick", "p50", "p99", "Delivered/tick");
+			for (String fleet : fleets.split(",")) {
+				int robots = Integer.parseInt(fleet.trim());
+				if (robots < loadTest.teamSize) {
+					System.out.printf("%6d   unsupported, mail needs teams of %d%n",
+						robots, loadTest.teamSize);
+					continue;
+				}
+				loadTest.search(robots);
+				System.out.printf("%6d %12.4f %10d %10d %12.4f%n", robots,
+					loadTest.bestRate,
+					loadTest.bestLatencies.getPercentile(50),
+					loadTest.bestLatencies.getPercentile(99),
+					loadTest.bestThroughput);
+			}
+		} finally {
+			loadTest.executor.shutdown();
+		}
+	}
+
+	/**
+	 * Find the highest sustainable rate for a fleet, leaving the result in
+	 * bestRate, bestLatencies and bestThroughput
+	 */
+	public void search(int robots)
+		throws InterruptedException, ExecutionException {
+		bestRate = 0;
+		bestLatencies = new LatencyHistogram();
+		bestThroughput = 0;
+		double low = 0;
+		double high = 0.05;
+		while (probe(robots, high)) {
+			low = high;
+			high *= 2;
+		}
+		while (high - low > precision) {
+			double middle = (low + high) / 2;
+			if (probe(robots, middle)) {
+				low = middle;
+			} else {
+				high = middle;
+			}
+		}
+	}
+
+	/**
+	 * Run every seed at this rate in parallel
+	 * @return whether the fleet kept up on all of them
+	 */
+	private boolean probe(int robots, double rate)
+		throws InterruptedException, ExecutionException {
+		List<Future<Simulation>> runs = new ArrayList<Future<Simulation>>();
+		for (int i = 0; i < seeds; i++) {
+			final int runSeed = seed + i;
+			runs.add(executor.submit(() -> simulate(robots, rate, runSeed)));
+		}
+		LatencyHistogram latencies = new LatencyHistogram();
+		long delivered = 0;
+		boolean sustainable = true;
+		for (Future<Simulation> run : runs) {
+			Simulation simulation = run.get();
+			latencies.merge(simulation.getLatencies());
+			delivered += simulation.getMailDelivered();
+			if (simulation.getPoolSize() > maxPool || simulation.getLatencies()
+				.getPercentile(99) > p99Target) {
+				sustainable = false;
+			}
+		}
+		if (sustainable) {
+			bestRate = rate;
+			bestLatencies = latencies;
+			bestThroughput = (double) delivered / (seeds * duration);
+		}
+		return sustainable;
+	}
+
+	private Simulation simulate(int robots, double rate, int runSeed) {
+		Properties automailProperties = new Properties();
+		automailProperties.putAll(baseProperties);
+		automailProperties.setProperty("Mode", "continuous");
+		automailProperties.setProperty("Verbose", "false");
+		automailProperties.setProperty("Stats_Window", "0");
+		automailProperties.remove("Delivery_Log");
+		automailProperties.setProperty("Robots", String.valueOf(robots));
+		automailProperties.setProperty("Arrival_Rate", String.valueOf(rate));
+		automailProperties.setProperty("Duration", String.valueOf(duration));
+		automailProperties.setProperty("Warmup", String.valueOf(warmup));
+		HashMap<Boolean, Integer> seedMap = new HashMap<>();
+		seedMap.put(true, runSeed);
+		Simulation simulation = new Simulation(automailProperties, seedMap);
+		simulation.run();
+		return simulation;
+	}
+}
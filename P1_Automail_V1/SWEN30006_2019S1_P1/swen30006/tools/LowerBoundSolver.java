@@ -0,0 +1,522 @@
+package tools;
+
+import automail.Building;
+import automail.MailClass;
+import automail.MailItem;
+import automail.PriorityMailItem;
+import automail.Robot;
+import automail.Simulation;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Lower bounds on the score and the final delivery time any mail pool
+ * strategy could reach on a given set of arrivals, so a strategy can be
+ * reported with its gap to optimal rather than only against another one.
+ *
+ * Trips follow the robot timing exactly: a light robot delivers its hand
+ * item floor ticks after leaving, moves on to its tube item, and is back
+ * loading floor + 1 ticks after its last delivery. Teams move at the team
+ * cost. Any strategy is a choice of which items go on which trip and when,
+ * so the cheapest choice bounds every strategy.
+ *
+ * Finding that choice is only practical for a few items, so the items are
+ * split by arrival into windows, each solved as if all robots were free for
+ * it alone. Every real schedule gives a schedule of that kind for each
+ * window, so the window optima add up to a lower bound. A window is solved
+ * by best first branch and bound, with trips started in time order on the
+ * robots free soonest. The search stops at a budget of nodes or open nodes,
+ * the smallest open bound is then still a valid bound. Windows are solved
+ * in parallel. With no more items than a window, the bound is the optimum.
+ *
+ * Windows see no congestion, so the score is also bounded from robot time:
+ * the m-th delivery cannot come before the robots have done the work of the
+ * m cheapest items. Matching the items to these earliest times at least
+ * cost, as an assignment problem, gives a second bound and the larger is
+ * reported.
+ *
+ * The final time is bounded by the latest single delivery, and by the robot
+ * time all items arriving after each time need.
+ *
+ * Usage: java tools.LowerBoundSolver [properties file]
+ * Mail is generated from the properties, or read from LowerBound_Trace, a
+ * file of arrival,floor,weight[,priority] lines.
+ */
+public class LowerBoundSolver {
+
+	private static final double PENALTY = 1.2;
+
+	/** A mail item as the solver sees it */
+	private static class Job {
+		final long arrival;
+		final int floor;
+		final int robots;
+		final double weight;
+
+		Job(MailItem mailItem) {
+			arrival = mailItem.getArrivalTime();
+			floor = mailItem.getDestFloor();
+			robots = MailClass.of(mailItem).robots;
+			weight = 1 + Math.sqrt(mailItem instanceof PriorityMailItem ?
+				((PriorityMailItem) mailItem).getPriorityLevel() : 0);
+		}
+
+		/** Ticks from leaving the mailroom to delivering it first */
+		long delay() {
+			return (floor - Building.MAILROOM_LOCATION) * (robots == 1 ?
+				Robot.INDIVIDUAL_MOVEMENT_COST : Robot.TEAM_MOVEMENT_COST) + 1;
+		}
+
+		double score(long delivered) {
+			return weight * Math.pow(delivered - arrival, PENALTY);
+		}
+	}
+
+	/** Part of a window search, robots free times are kept sorted */
+	private static class Node {
+		final long remaining;
+		final long[] free;
+		final long lastStart;
+		final double cost;
+		final double bound;
+
+		Node(long remaining, long[] free, long lastStart, double cost,
+			double bound) {
+			this.remaining = remaining;
+			this.free = free;
+			this.lastStart = lastStart;
+			this.cost = cost;
+			this.bound = bound;
+		}
+	}
+
+	/** Bound found for one window */
+	private static class WindowBound {
+		final double score;
+		final boolean optimal;
+
+		WindowBound(double score, boolean optimal) {
+			this.score = score;
+			this.optimal = optimal;
+		}
+	}
+
+	private final int robots;
+	private final int windowSize;
+	private final long nodeBudget;
+	private final int openLimit;
+	/** Most items the congestion bound is worked out for */
+	private final int assignmentLimit;
+	private final ExecutorService executor;
+
+	private double scoreBound;
+	private double windowBound;
+	private double congestionBound;
+	private long timeBound;
+	private int windows;
+	private int optimalWindows;
+	private int undeliverable;
+	/** Items Admission rejects, never delivered by any strategy */
+	private int quarantined;
+
+	public LowerBoundSolver(Properties automailProperties) {
+		robots = Integer.parseInt(automailProperties.getProperty("Robots"));
+		windowSize = Integer.parseInt(
+			automailProperties.getProperty("LowerBound_Window", "8"));
+		assert(windowSize > 0 && windowSize < 64);
+		nodeBudget = Long.parseLong(
+			automailProperties.getProperty("LowerBound_Nodes", "200000"));
+		openLimit = Integer.parseInt(
+			automailProperties.getProperty("LowerBound_Open", "100000"));
+		assignmentLimit = Integer.parseInt(
+			automailProperties.getProperty("LowerBound_Assignment_Max", "2000"));
+		int threads = Integer.parseInt(automailProperties.getProperty(
+			"LowerBound_Threads",
+			String.valueOf(Runtime.getRuntime().availableProcessors())));
+		executor = Executors.newFixedThreadPool(threads);
+	}
+
+	public static void main(String[] args) throws IOException,
+		InterruptedException, ExecutionException {
+		Properties automailProperties = Simulation.loadProperties(
+			args.length > 0 ? args[0] : "automail.properties");
+		automailProperties.setProperty("Verbose", "false");
+		HashMap<Boolean, Integer> seedMap = new HashMap<>();
+		String seedProp = automailProperties.getProperty("Seed");
+		if (seedProp == null) {
+			seedMap.put(false, 0);
+		} else {
+			seedMap.put(true, Integer.parseInt(seedProp));
+		}
+		Simulation simulation = new Simulation(automailProperties, seedMap);
+		String trace = automailProperties.getProperty("LowerBound_Trace");
+		List<MailItem> arrivals = trace == null ? simulation.getArrivals() :
+			readTrace(trace);
+
+		LowerBoundSolver solver = new LowerBoundSolver(automailProperties);
+		try {
+			solver.solve(arrivals);
+		} finally {
+			solver.executor.shutdown();
+		}
+		System.out.printf("Items: %d | windows: %d | solved to optimal: %d%n",
+			arrivals.size(), solver.windows, solver.optimalWindows);
+		if (solver.undeliverable > 0) {
+			System.out.printf("Items too heavy for the fleet, not counted: %d%n",
+				solver.undeliverable);
+		}
+		if (solver.quarantined > 0) {
+			System.out.printf("Items quarantined on arrival, not counted: %d%n",
+				solver.quarantined);
+		}
+		System.out.println("Delivery time lower bound: " + solver.timeBound);
+		System.out.printf("Score lower bound: %.2f (windows %.2f | congestion"
+			+ " %.2f)%n", solver.scoreBound, solver.windowBound,
+			solver.congestionBound);
+		if (trace == null) {
+			simulation.run();
+			simulation.printResults();
+			System.out.printf("Gap: time %.1f%% | score %.1f%%%n",
+				gap(simulation.getFinalTime(), solver.timeBound),
+				gap(simulation.getTotalScore(), solver.scoreBound));
+		}
+	}
+
+	private static double gap(double value, double bound) {
+		return bound <= 0 ? 0 : 100 * (value - bound) / bound;
+	}
+
+	/**
+	 * Read arrivals written one per line as arrival,floor,weight and an
+	 * optional priority, lines starting with # are skipped
+	 */
+	public static List<MailItem> readTrace(String fileName) throws IOException {
+		List<MailItem> arrivals = new ArrayList<MailItem>();
+		try (BufferedReader reader =
+			new BufferedReader(new FileReader(fileName))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] fields = line.split(",");
+				long arrival = Long.parseLong(fields[0].trim());
+				int floor = Integer.parseInt(fields[1].trim());
+				int weight = Integer.parseInt(fields[2].trim());
+				arrivals.add(fields.length > 3 ? new PriorityMailItem(floor,
+					arrival, weight, Integer.parseInt(fields[3].trim())) :
+					new MailItem(floor, arrival, weight));
+			}
+		}
+		return arrivals;
+	}
+
+	/**
+	 * Bound the score and delivery time of the given arrivals
+	 */
+	public void solve(List<MailItem> arrivals)
+		throws InterruptedException, ExecutionException {
+		List<Job> jobs = new ArrayList<Job>();
+		undeliverable = 0;
+		quarantined = 0;
+		for (MailItem mailItem : arrivals) {
+			Job job = new Job(mailItem);
+			if (job.robots == 0) {
+				quarantined++;
+			} else if (job.robots > robots) {
+				undeliverable++;
+			} else {
+				jobs.add(job);
+			}
+		}
+		jobs.sort((a, b) -> Long.compare(a.arrival, b.arrival));
+		timeBound = timeBound(jobs);
+
+		List<Future<WindowBound>> bounds = new ArrayList<Future<WindowBound>>();
+		for (int first = 0; first < jobs.size(); first += windowSize) {
+			Job[] window = jobs.subList(first,
+				Math.min(first + windowSize, jobs.size())).toArray(new Job[0]);
+			bounds.add(executor.submit(() -> solveWindow(window)));
+		}
+		Future<Double> congestion = jobs.size() > assignmentLimit ? null :
+			executor.submit(() -> congestionBound(jobs));
+		windowBound = 0;
+		windows = bounds.size();
+		optimalWindows = 0;
+		for (Future<WindowBound> bound : bounds) {
+			windowBound += bound.get().score;
+			if (bound.get().optimal) {
+				optimalWindows++;
+			}
+		}
+		congestionBound = congestion == null ? 0 : congestion.get();
+		scoreBound = Math.max(windowBound, congestionBound);
+	}
+
+	/**
+	 * @return robot time an item needs at least, light items at least
+	 * 	share a trip with another
+	 */
+	private static long work(Job job) {
+		return job.robots == 1 ? (job.floor - Building.MAILROOM_LOCATION) *
+			Robot.INDIVIDUAL_MOVEMENT_COST + 2 :
+			job.robots * (job.delay() + returnTime(job.floor));
+	}
+
+	/**
+	 * @return the least cost of giving each item one of the earliest times
+	 * 	the m-th delivery can happen
+	 */
+	private double congestionBound(List<Job> jobs) {
+		int n = jobs.size();
+		long[] cheapest = new long[n];
+		for (int i = 0; i < n; i++) {
+			cheapest[i] = work(jobs.get(i));
+		}
+		Arrays.sort(cheapest);
+		long lastReturn = returnTime(Building.FLOORS);
+		long[] earliest = new long[n];
+		long total = 0;
+		for (int m = 0; m < n; m++) {
+			total += cheapest[m];
+			earliest[m] = (total + robots - 1) / robots - lastReturn;
+		}
+		double[][] cost = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			Job job = jobs.get(i);
+			for (int m = 0; m < n; m++) {
+				cost[i][m] = job.score(Math.max(earliest[m],
+					job.arrival + job.delay()));
+			}
+		}
+		return minimumAssignment(cost);
+	}
+
+	/**
+	 * Hungarian method with potentials, O(n^3)
+	 * @return the least total cost of matching every row to its own column
+	 */
+	private static double minimumAssignment(double[][] cost) {
+		int n = cost.length;
+		double[] rowPotential = new double[n + 1];
+		double[] columnPotential = new double[n + 1];
+		// row matched to each column, 1 based with 0 as the free row
+		int[] match = new int[n + 1];
+		int[] way = new int[n + 1];
+		for (int row = 1; row <= n; row++) {
+			match[0] = row;
+			int column = 0;
+			double[] least = new double[n + 1];
+			Arrays.fill(least, Double.POSITIVE_INFINITY);
+			boolean[] used = new boolean[n + 1];
+			do {
+				used[column] = true;
+				int matched = match[column];
+				double delta = Double.POSITIVE_INFINITY;
+				int next = 0;
+				for (int j = 1; j <= n; j++) {
+					if (!used[j]) {
+						double reduced = cost[matched - 1][j - 1] -
+							rowPotential[matched] - columnPotential[j];
+						if (reduced < least[j]) {
+							least[j] = reduced;
+							way[j] = column;
+						}
+						if (least[j] < delta) {
+							delta = least[j];
+							next = j;
+						}
+					}
+				}
+				for (int j = 0; j <= n; j++) {
+					if (used[j]) {
+						rowPotential[match[j]] += delta;
+						columnPotential[j] -= delta;
+					} else {
+						least[j] -= delta;
+					}
+				}
+				column = next;
+			} while (match[column] != 0);
+			do {
+				int previous = way[column];
+				match[column] = match[previous];
+				column = previous;
+			} while (column != 0);
+		}
+		double total = 0;
+		for (int j = 1; j <= n; j++) {
+			total += cost[match[j] - 1][j - 1];
+		}
+		return total;
+	}
+
+	/**
+	 * @return the latest of the earliest deliveries, or of the time the
+	 * 	robots need to deliver everything arriving after some time
+	 */
+	private long timeBound(List<Job> jobs) {
+		long bound = 0;
+		for (Job job : jobs) {
+			bound = Math.max(bound, job.arrival + job.delay());
+		}
+		// A robot may end its last trip without coming back
+		long lastReturn = returnTime(Building.FLOORS);
+		double work = 0;
+		for (int i = jobs.size() - 1; i >= 0; i--) {
+			Job job = jobs.get(i);
+			work += work(job);
+			bound = Math.max(bound, job.arrival +
+				(long) Math.ceil(work / robots) - lastReturn);
+		}
+		return bound;
+	}
+
+	/**
+	 * @return ticks from a delivery on the floor to being loaded again
+	 */
+	private static long returnTime(int floor) {
+		return (floor - Building.MAILROOM_LOCATION) *
+			Robot.INDIVIDUAL_MOVEMENT_COST + 2;
+	}
+
+	private WindowBound solveWindow(Job[] jobs) {
+		long all = (1L << jobs.length) - 1;
+		PriorityQueue<Node> open = new PriorityQueue<Node>(
+			(a, b) -> Double.compare(a.bound, b.bound));
+		Node root = new Node(all, new long[robots], 0, 0, 0);
+		double best = greedy(jobs, root);
+		open.add(bounded(jobs, root));
+		long nodes = 0;
+		while (!open.isEmpty()) {
+			Node node = open.peek();
+			if (node.bound >= best) {
+				return new WindowBound(best, true);
+			}
+			if (++nodes > nodeBudget || open.size() > openLimit) {
+				return new WindowBound(node.bound, false);
+			}
+			open.poll();
+			for (Node child : children(jobs, node)) {
+				if (child.remaining == 0) {
+					best = Math.min(best, child.cost);
+				} else if (child.bound < best) {
+					open.add(child);
+				}
+			}
+		}
+		return new WindowBound(best, true);
+	}
+
+	/**
+	 * @return the cost of sending the items one by one in arrival order
+	 */
+	private double greedy(Job[] jobs, Node node) {
+		while (node.remaining != 0) {
+			int i = Long.numberOfTrailingZeros(node.remaining);
+			node = jobs[i].robots == 1 ? solo(jobs, node, i) :
+				team(jobs, node, i);
+		}
+		return node.cost;
+	}
+
+	/**
+	 * Every next trip for the robots free soonest, none starting before the
+	 * last one
+	 */
+	private List<Node> children(Job[] jobs, Node node) {
+		List<Node> children = new ArrayList<Node>();
+		for (int i = 0; i < jobs.length; i++) {
+			if ((node.remaining & 1L << i) == 0) {
+				continue;
+			}
+			if (jobs[i].robots > 1) {
+				children.add(bounded(jobs, team(jobs, node, i)));
+				continue;
+			}
+			children.add(bounded(jobs, solo(jobs, node, i)));
+			for (int j = 0; j < jobs.length; j++) {
+				if (j != i && (node.remaining & 1L << j) != 0 &&
+					jobs[j].robots == 1) {
+					children.add(bounded(jobs, pair(jobs, node, i, j)));
+				}
+			}
+		}
+		return children;
+	}
+
+	private Node solo(Job[] jobs, Node node, int i) {
+		Job job = jobs[i];
+		long start = Math.max(Math.max(node.free[0], job.arrival),
+			node.lastStart);
+		long delivered = start + job.delay();
+		return trip(node, 1L << i, 1, start,
+			delivered + returnTime(job.floor), job.score(delivered));
+	}
+
+	private Node pair(Job[] jobs, Node node, int hand, int tube) {
+		Job first = jobs[hand];
+		Job second = jobs[tube];
+		long start = Math.max(Math.max(node.free[0], node.lastStart),
+			Math.max(first.arrival, second.arrival));
+		long handDelivered = start + first.delay();
+		long tubeDelivered = handDelivered + Math.abs(second.floor -
+			first.floor) * Robot.INDIVIDUAL_MOVEMENT_COST + 1;
+		return trip(node, 1L << hand | 1L << tube, 1, start,
+			tubeDelivered + returnTime(second.floor),
+			first.score(handDelivered) + second.score(tubeDelivered));
+	}
+
+	private Node team(Job[] jobs, Node node, int i) {
+		Job job = jobs[i];
+		long start = Math.max(Math.max(node.free[job.robots - 1],
+			job.arrival), node.lastStart);
+		long delivered = start + job.delay();
+		return trip(node, 1L << i, job.robots, start,
+			delivered + returnTime(job.floor), job.score(delivered));
+	}
+
+	/**
+	 * Send the robots free soonest on a trip
+	 */
+	private Node trip(Node node, long items, int teamSize, long start,
+		long back, double cost) {
+		long[] free = node.free.clone();
+		for (int k = 0; k < teamSize; k++) {
+			free[k] = back;
+		}
+		Arrays.sort(free);
+		return new Node(node.remaining & ~items, free, start, node.cost + cost,
+			node.cost + cost);
+	}
+
+	/**
+	 * Add the cost of every item left delivered as soon as it could leave
+	 */
+	private Node bounded(Job[] jobs, Node node) {
+		double bound = node.cost;
+		for (int i = 0; i < jobs.length; i++) {
+			if ((node.remaining & 1L << i) != 0) {
+				Job job = jobs[i];
+				long start = Math.max(Math.max(node.free[job.robots - 1],
+					job.arrival), node.lastStart);
+				bound += job.score(start + job.delay());
+			}
+		}
+		return new Node(node.remaining, node.free, node.lastStart, node.cost,
+			bound);
+	}
+}
@@ -0,0 +1,333 @@
+package tools;
+
+import automail.Simulation;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs seeds until the mean score is known to a given precision, rather
+ * than for a fixed number of seeds.
+ *
+ * With one configuration the interval is on its mean score. With more, the
+ * first is the baseline and the intervals are on the differences between
+ * each other configuration and the baseline. Every configuration runs on
+ * the same seeds, so both sides of a difference get the same mail and the
+ * same failures, and most of the noise of the mail cancels out of the
+ * difference. Seeds run in parallel but are taken in order, so the number
+ * of runs and the result depend only on the seeds.
+ *
+ * Runs stop once every interval is narrower than the target, or once every
+ * difference is clearly above or below zero when MonteCarlo_Stop_Decided
+ * is set, after at least MonteCarlo_Min_Runs and at most MonteCarlo_Max_Runs
+ * seeds. Intervals use the Student t distribution.
+ *
+ * Stopping as soon as a difference looks clear would find one far more
+ * often than 1 - MonteCarlo_Confidence when there is none, as each look is
+ * another chance. So differences are only looked at every
+ * MonteCarlo_Look_Every seeds, with the confidence of each look raised by
+ * Bonferroni's bound over every look up to MonteCarlo_Max_Runs, and the
+ * chance of stopping on a difference that is not there stays within
+ * 1 - MonteCarlo_Confidence.
+ *
+ * Usage: java tools.MonteCarlo [properties file]
+ * MonteCarlo_Configs lists the configurations as Sweep_Configs does.
+ */
+public class MonteCarlo {
+
+	/** Properties kept in static fields, which every run must share */
+	static final String[] SHARED = {"Floors", "Last_Delivery_Time",
+		"Flight_Events"};
+
+	/** Running mean and variance of one quantity */
+	static class Estimate {
+		long n = 0;
+		double mean = 0;
+		/** Sum of squared differences from the mean */
+		double squares = 0;
+
+		void add(double value) {
+			n++;
+			double delta = value - mean;
+			mean += delta / n;
+			squares += delta * (value - mean);
+		}
+
+		double variance() {
+			return n < 2 ? Double.POSITIVE_INFINITY : squares / (n - 1);
+		}
+
+		/**
+		 * @return half the width of the confidence interval on the mean
+		 */
+		double halfWidth(double confidence) {
+			if (n < 2) {
+				return Double.POSITIVE_INFINITY;
+			}
+			return studentQuantile((1 + confidence) / 2, n - 1) *
+				Math.sqrt(variance() / n);
+		}
+	}
+
+	private final List<Properties> configs = new ArrayList<Properties>();
+	private final List<String> names = new ArrayList<String>();
+	private final int firstSeed;
+	private final int minRuns;
+	private final int maxRuns;
+	private final double confidence;
+	/** Half width wanted, absolute or relative to the baseline mean */
+	private final double halfWidth;
+	private final boolean relative;
+	private final boolean stopDecided;
+	/** Seeds between looks at whether the differences are clear */
+	private final int lookEvery;
+	/** Confidence of each look, corrected for the number of looks */
+	private final double lookConfidence;
+	private final int threads;
+
+	/** Scores of each configuration */
+	private final List<Estimate> scores = new ArrayList<Estimate>();
+	/** Differences of each configuration from the baseline, none for it */
+	private final List<Estimate> differences = new ArrayList<Estimate>();
+	private String stopReason = "MonteCarlo_Max_Runs reached";
+
+	public MonteCarlo(Properties automailProperties) {
+		for (String config : automailProperties.getProperty(
+			"MonteCarlo_Configs", "").split("\\|", -1)) {
+			Properties properties = new Properties();
+			properties.putAll(automailProperties);
+			for (String setting : config.split(";")) {
+				int equals = setting.indexOf('=');
+				if (equals > 0) {
+					properties.setProperty(setting.substring(0, equals).trim(),
+						setting.substring(equals + 1).trim());
+				}
+			}
+			for (String shared : SHARED) {
+				if (!String.valueOf(properties.getProperty(shared)).equals(
+					String.valueOf(automailProperties.getProperty(shared)))) {
+					throw new IllegalArgumentException(shared +
+						" cannot differ between configurations run together");
+				}
+			}
+			configs.add(properties);
+			names.add(config.trim().isEmpty() ? "(base)" : config.trim());
+			scores.add(new Estimate());
+			differences.add(new Estimate());
+		}
+		firstSeed = Integer.parseInt(
+			automailProperties.getProperty("MonteCarlo_First_Seed", "1"));
+		// the t quantile below is close from 5 degrees of freedom
+		minRuns = Math.max(6, Integer.parseInt(
+			automailProperties.getProperty("MonteCarlo_Min_Runs", "10")));
+		maxRuns = Integer.parseInt(
+			automailProperties.getProperty("MonteCarlo_Max_Runs", "2000"));
+		confidence = Double.parseDouble(
+			automailProperties.getProperty("MonteCarlo_Confidence", "0.95"));
+		String absolute = automailProperties.getProperty("MonteCarlo_Half_Width");
+		relative = absolute == null;
+		halfWidth = relative ? Double.parseDouble(automailProperties
+			.getProperty("MonteCarlo_Relative_Width", "0.01")) :
+			Double.parseDouble(absolute);
+		stopDecided = Boolean.parseBoolean(
+			automailProperties.getProperty("MonteCarlo_Stop_Decided", "true"));
+		lookEvery = Math.max(1, Integer.parseInt(automailProperties
+			.getProperty("MonteCarlo_Look_Every", "50")));
+		long looks = Math.max(1, (maxRuns - minRuns) / lookEvery + 1);
+		lookConfidence = 1 - (1 - confidence) / looks;
+		threads = Integer.parseInt(automailProperties.getProperty(
+			"MonteCarlo_Threads",
+			String.valueOf(Runtime.getRuntime().availableProcessors())));
+	}
+
+	public static void main(String[] args) throws IOException,
+		InterruptedException, ExecutionException {
+		Properties automailProperties = Simulation.loadProperties(
+			args.length > 0 ? args[0] : "automail.properties");
+		MonteCarlo monteCarlo = new MonteCarlo(automailProperties);
+		monteCarlo.evaluate();
+		monteCarlo.printResults();
+	}
+
+	/**
+	 * Run seeds until the intervals are narrow enough
+	 */
+	public void evaluate() throws InterruptedException, ExecutionException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads,
+			runnable -> {
+				// runs still going when evaluation stops are abandoned
+				Thread thread = new Thread(runnable);
+				thread.setDaemon(true);
+				return thread;
+			});
+		Deque<Future<double[]>> running = new ArrayDeque<Future<double[]>>();
+		int submitted = 0;
+		try {
+			while (true) {
+				while (submitted < maxRuns && running.size() < 2 * threads) {
+					final int seed = firstSeed + submitted++;
+					running.add(executor.submit(() -> runSeed(seed)));
+				}
+				if (running.isEmpty()) {
+					return;
+				}
+				double[] seedScores = running.poll().get();
+				for (int config = 0; config < configs.size(); config++) {
+					scores.get(config).add(seedScores[config]);
+					differences.get(config).add(
+						seedScores[config] - seedScores[0]);
+				}
+				long runs = scores.get(0).n;
+				if (runs % 10 == 0) {
+					printProgress();
+				}
+				if (runs >= minRuns && stop(runs)) {
+					return;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return the score of every configuration on one seed
+	 */
+	private double[] runSeed(int seed) {
+		double[] seedScores = new double[configs.size()];
+		for (int config = 0; config < configs.size(); config++) {
+			seedScores[config] = RunProtocol.run(new RunProtocol.Run(seed, seed,
+				configs.get(config))).score;
+		}
+		return seedScores;
+	}
+
+	/**
+	 * @return the intervals followed, the baseline score alone or the
+	 * 	difference of each other configuration from it
+	 */
+	private List<Estimate> followed() {
+		return configs.size() == 1 ? scores :
+			differences.subList(1, differences.size());
+	}
+
+	private double target() {
+		return relative ? halfWidth * Math.abs(scores.get(0).mean) : halfWidth;
+	}
+
+	/**
+	 * @param runs seeds run so far, at least minRuns
+	 */
+	private boolean stop(long runs) {
+		boolean narrow = true;
+		boolean decided = configs.size() > 1 && stopDecided &&
+			(runs - minRuns) % lookEvery == 0;
+		for (Estimate estimate : followed()) {
+			narrow &= estimate.halfWidth(confidence) <= target();
+			if (decided) {
+				decided = Math.abs(estimate.mean) >
+					estimate.halfWidth(lookConfidence);
+			}
+		}
+		if (narrow) {
+			stopReason = "intervals narrower than the target";
+		} else if (decided) {
+			stopReason = String.format("every difference is clear of zero at"
+				+ " %.4f confidence, corrected for the looks", lookConfidence);
+		}
+		return narrow || decided;
+	}
+
+	private void printProgress() {
+		StringBuilder line = new StringBuilder(String.format("%5d runs:",
+			scores.get(0).n));
+		for (Estimate estimate : followed()) {
+			line.append(String.format(" %.2f +- %.2f", estimate.mean,
+				estimate.halfWidth(confidence)));
+		}
+		System.out.println(line.append(String.format(" (target +- %.2f)",
+			target())));
+	}
+
+	public void printResults() {
+		long runs = scores.get(0).n;
+		System.out.printf("Stopped after %d seeds from %d: %s%n", runs,
+			firstSeed, stopReason);
+		System.out.printf("%-40s %14s %12s %14s %12s%n", "Config", "Mean score",
+			"+-", "Difference", "+-");
+		for (int config = 0; config < configs.size(); config++) {
+			Estimate score = scores.get(config);
+			Estimate difference = differences.get(config);
+			if (config == 0) {
+				System.out.printf("%-40s %14.2f %12.2f%n", names.get(config),
+					score.mean, score.halfWidth(confidence));
+				continue;
+			}
+			double width = difference.halfWidth(confidence);
+			System.out.printf("%-40s %14.2f %12.2f %14.2f %12.2f %s%n",
+				names.get(config), score.mean, score.halfWidth(confidence),
+				difference.mean, width, Math.abs(difference.mean) <= width ?
+				"no clear difference" : difference.mean < 0 ? "better" :
+				"worse");
+			if (difference.variance() == 0) {
+				continue;
+			}
+			// runs independent seeds would need for the same interval
+			double independent = (scores.get(0).variance() +
+				score.variance()) / difference.variance();
+			System.out.printf("%-40s common seeds cut the variance of the"
+				+ " difference %.1f times, %d independent runs each%n", "",
+				independent, Math.round(independent * runs));
+		}
+	}
+
+	/**
+	 * @return the p quantile of the Student t distribution, from the normal
+	 * 	quantile by the Cornish-Fisher expansion
+	 */
+	static double studentQuantile(double p, long degrees) {
+		double z = normalQuantile(p);
+		double v = degrees;
+		double z2 = z * z;
+		return z + z * (z2 + 1) / (4 * v) +
+			z * ((5 * z2 + 16) * z2 + 3) / (96 * v * v) +
+			z * (((3 * z2 + 19) * z2 + 17) * z2 - 15) / (384 * v * v * v);
+	}
+
+	/**
+	 * @return the p quantile of the standard normal distribution, found by
+	 * 	bisection
+	 */
+	static double normalQuantile(double p) {
+		double low = -10;
+		double high = 10;
+		for (int i = 0; i < 100; i++) {
+			double middle = (low + high) / 2;
+			if (normalCdf(middle) < p) {
+				low = middle;
+			} else {
+				high = middle;
+			}
+		}
+		return (low + high) / 2;
+	}
+
+	/**
+	 * Abramowitz and Stegun 7.1.26, accurate to about 1e-7
+	 */
+	private static double normalCdf(double x) {
+		double t = 1 / (1 + 0.3275911 * Math.abs(x) / Math.sqrt(2));
+		double erf = 1 - t * (0.254829592 + t * (-0.284496736 + t *
+			(1.421413741 + t * (-1.453152027 + t * 1.061405429)))) *
+			Math.exp(-x * x / 2);
+		return x < 0 ? (1 - erf) / 2 : (1 + erf) / 2;
+	}
+}
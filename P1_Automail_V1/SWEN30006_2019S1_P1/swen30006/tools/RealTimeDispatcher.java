@@ -0,0 +1,260 @@
+package tools;
+
+import automail.Clock;
+import automail.IRobotDriver;
+import automail.LatencyHistogram;
+import automail.MailItem;
+import automail.PriorityMailItem;
+import automail.Robot;
+import automail.Simulation;
+import automail.WallClock;
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the mail pool as a live dispatcher on a wall clock. Mail and robots
+ * reaching floors come in as messages from a RobotStandIn, started here
+ * unless RealTime_StandIn is false, or from anything speaking its lines on
+ * RealTime_Port.
+ *
+ * A reader thread queues each message with the time it came in. The
+ * dispatcher thread owns the simulation: it takes every message waiting,
+ * applies them, loads and dispatches waiting robots, then sends the moves.
+ * The time from a message coming in to that decision is its decision
+ * latency, reported against RealTime_Budget_Micros. Taking all waiting
+ * messages at once keeps a backlog from growing when messages come in
+ * faster than one decision each.
+ *
+ * Usage: java tools.RealTimeDispatcher [properties file]
+ */
+public class RealTimeDispatcher implements IRobotDriver {
+
+	/** A message and when it came in */
+	private static class Signal {
+		final String line;
+		final long received;
+
+		Signal(String line, long received) {
+			this.line = line;
+			this.received = received;
+		}
+	}
+
+	private final Simulation simulation;
+	private final WallClock clock;
+	private final PrintWriter out;
+	private final Robot[] robots;
+	private final Map<Robot, Integer> index = new HashMap<Robot, Integer>();
+	private final BlockingQueue<Signal> queue =
+		new LinkedBlockingQueue<Signal>();
+	private final long budgetMicros;
+
+	/** Decision latencies in microseconds */
+	private final LatencyHistogram decisions = new LatencyHistogram();
+	private long overBudget = 0;
+	private long dispatches = 0;
+	private long elapsedNanos = 0;
+
+	public RealTimeDispatcher(Simulation simulation, WallClock clock,
+		PrintWriter out, long budgetMicros) {
+		this.simulation = simulation;
+		this.clock = clock;
+		this.out = out;
+		this.budgetMicros = budgetMicros;
+		robots = simulation.getRobots();
+		for (int i = 0; i < robots.length; i++) {
+			index.put(robots[i], i);
+		}
+	}
+
+	public static void main(String[] args) throws IOException,
+		InterruptedException {
+		String fileName = args.length > 0 ? args[0] : "automail.properties";
+		Properties automailProperties = Simulation.loadProperties(fileName);
+		automailProperties.setProperty("Mode", "continuous");
+		automailProperties.setProperty("Verbose", "false");
+		automailProperties.setProperty("Stats_Window", "0");
+		HashMap<Boolean, Integer> seedMap = new HashMap<>();
+		String seed = automailProperties.getProperty("Seed");
+		if (seed != null) {
+			seedMap.put(true, Integer.parseInt(seed));
+		}
+		int port = Integer.parseInt(
+			automailProperties.getProperty("RealTime_Port", "0"));
+		InetAddress bind = InetAddress.getByName(
+			automailProperties.getProperty("RealTime_Bind", "127.0.0.1"));
+		Process standIn = null;
+		try (ServerSocket server = new ServerSocket(port, 1, bind)) {
+			System.out.printf("Dispatcher listening on %s:%d%n",
+				bind.getHostAddress(), server.getLocalPort());
+			if (Boolean.parseBoolean(automailProperties.getProperty(
+				"RealTime_StandIn", "true"))) {
+				ProcessBuilder builder = new ProcessBuilder(
+					System.getProperty("java.home") + File.separator + "bin" +
+					File.separator + "java", "-cp",
+					System.getProperty("java.class.path"),
+					RobotStandIn.class.getName(), "127.0.0.1",
+					String.valueOf(server.getLocalPort()), fileName);
+				builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+				builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+				standIn = builder.start();
+			}
+			try (Socket socket = server.accept()) {
+				socket.setTcpNoDelay(true);
+				Simulation simulation =
+					new Simulation(automailProperties, seedMap);
+				RealTimeDispatcher dispatcher = new RealTimeDispatcher(
+					simulation, new WallClock(1000 * Long.parseLong(
+						automailProperties.getProperty(
+							"RealTime_Tick_Micros", "1000"))),
+					new PrintWriter(new OutputStreamWriter(
+						socket.getOutputStream(), StandardCharsets.UTF_8)),
+					Long.parseLong(automailProperties.getProperty(
+						"RealTime_Budget_Micros", "1000")));
+				Thread reader = new Thread(() -> dispatcher.read(socket));
+				reader.setDaemon(true);
+				reader.start();
+				dispatcher.run();
+				simulation.closeDeliveryLog();
+				dispatcher.printResults();
+				simulation.printResults();
+			}
+		} finally {
+			if (standIn != null && !standIn.waitFor(5, TimeUnit.SECONDS)) {
+				standIn.destroy();
+			}
+		}
+	}
+
+	/**
+	 * Queue messages as they come in, until the connection closes
+	 */
+	private void read(Socket socket) {
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+				socket.getInputStream(), StandardCharsets.UTF_8));
+			String line;
+			while ((line = in.readLine()) != null) {
+				queue.add(new Signal(line, System.nanoTime()));
+			}
+		} catch (IOException e) {
+			if (!socket.isClosed()) {
+				e.printStackTrace();
+			}
+		}
+		queue.add(new Signal(RobotStandIn.END, System.nanoTime()));
+	}
+
+	/**
+	 * Dispatch on this thread until the stand-in has sent all its mail
+	 */
+	public void run() throws InterruptedException {
+		Clock.use(clock);
+		for (Robot robot : robots) {
+			robot.setDriver(this);
+			arrived(robot);
+		}
+		out.println(RobotStandIn.START);
+		out.flush();
+		long start = System.nanoTime();
+		List<Signal> batch = new ArrayList<Signal>();
+		boolean ended = false;
+		while (!ended) {
+			batch.add(queue.take());
+			queue.drainTo(batch);
+			for (Signal signal : batch) {
+				ended |= apply(signal.line);
+			}
+			try {
+				simulation.dispatch();
+			} catch (ItemTooHeavyException e) {
+				e.printStackTrace();
+			}
+			out.flush();
+			long decided = System.nanoTime();
+			for (Signal signal : batch) {
+				long micros = (decided - signal.received) / 1000;
+				decisions.record(micros);
+				if (micros > budgetMicros) {
+					overBudget++;
+				}
+			}
+			dispatches++;
+			batch.clear();
+		}
+		elapsedNanos = System.nanoTime() - start;
+		out.println(RobotStandIn.QUIT);
+		out.flush();
+	}
+
+	/**
+	 * @return whether the message ends the run
+	 */
+	private boolean apply(String line) {
+		String[] fields = line.split(" ");
+		switch (fields[0]) {
+		case RobotStandIn.MAIL:
+			int floor = Integer.parseInt(fields[1]);
+			int weight = Integer.parseInt(fields[2]);
+			int priority = Integer.parseInt(fields[3]);
+			simulation.mailArrived(priority > 0 ? new PriorityMailItem(floor,
+				Clock.Time(), weight, priority) :
+				new MailItem(floor, Clock.Time(), weight));
+			return false;
+		case RobotStandIn.AT:
+			arrived(robots[Integer.parseInt(fields[1])]);
+			return false;
+		case RobotStandIn.END:
+			return true;
+		default:
+			System.out.println("Unknown message: " + line);
+			return false;
+		}
+	}
+
+	private void arrived(Robot robot) {
+		try {
+			robot.arrived();
+		} catch (ExcessiveDeliveryException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public void moveTo(Robot robot, int floor, int ticksPerFloor) {
+		out.printf("%s %d %d %d%n", RobotStandIn.MOVE, index.get(robot), floor,
+			ticksPerFloor);
+	}
+
+	public void printResults() {
+		double seconds = elapsedNanos / 1e9;
+		System.out.printf("Real time: %.1f s | %d messages (%.0f/s) in %d"
+			+ " dispatches%n", seconds, decisions.getCount(),
+			decisions.getCount() / seconds, dispatches);
+		System.out.printf("Decision latency: mean %.1f us | p50 %d | p99 %d |"
+			+ " max %d | over the %d us budget: %d (%.3f%%)%n",
+			decisions.getMean(), decisions.getPercentile(50),
+			decisions.getPercentile(99), decisions.getMax(), budgetMicros,
+			overBudget, decisions.getCount() == 0 ? 0 :
+			100.0 * overBudget / decisions.getCount());
+	}
+}
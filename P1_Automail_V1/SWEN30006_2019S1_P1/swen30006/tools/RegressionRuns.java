@@ -0,0 +1,105 @@
+package tools;
+
+import automail.Simulation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Properties;
+
+/**
+ * Runs configurations that have broken before, each on a few seeds, and
+ * fails if any run throws, fails an assertion, prints a stack trace or
+ * leaves more than MAX_POOL items in the pool at the end, as a robot lost
+ * to the mail pool or a deadlock would. Cases are written as Sweep_Configs
+ * writes a configuration, on top of the properties file in continuous mode.
+ *
+ * Assertions are turned on for the simulation classes, loaded after.
+ *
+ * Usage: java tools.RegressionRuns [properties file]
+ * Exits with status 1 when any run fails.
+ */
+public class RegressionRuns {
+
+	/** Most items left in the pool at the end of a run that passes */
+	private static final int MAX_POOL = 50;
+
+	/** Name, configuration and seeds of each case */
+	private static final String[][] CASES = {
+		// two bands each holding a robot for a heavier item, waiting for
+		// the other's
+		{"zones deadlock", "Robots=3;Zones=3;Dispatch=score;Duration=50000",
+			"1,2,3"},
+		// a robot lent by another band and taken off its team for a
+		// priority item was also left waiting in its own band
+		{"zones with preemption", "Robots=4;Zones=3;Zone_Rebalance=100;"
+			+ "Preemption_Threshold=0;Arrival_Rate=0.15;Duration=50000",
+			"2,3,4,5,6"},
+	};
+
+	public static void main(String[] args) throws IOException {
+		ClassLoader.getSystemClassLoader().setDefaultAssertionStatus(true);
+		Properties base = Simulation.loadProperties(
+			args.length > 0 ? args[0] : "automail.properties");
+		base.setProperty("Mode", "continuous");
+		base.setProperty("Verbose", "false");
+		base.setProperty("Stats_Window", "0");
+		base.remove("Delivery_Log");
+		int failed = 0;
+		int runs = 0;
+		for (String[] test : CASES) {
+			Properties automailProperties = new Properties();
+			automailProperties.putAll(base);
+			for (String setting : test[1].split(";")) {
+				String[] pair = setting.split("=", 2);
+				automailProperties.setProperty(pair[0].trim(), pair[1].trim());
+			}
+			for (String seed : test[2].split(",")) {
+				runs++;
+				String failure = run(automailProperties,
+					Integer.parseInt(seed.trim()));
+				System.out.printf("%-24s seed %-4s %s%n", test[0], seed.trim(),
+					failure == null ? "ok" : "FAILED " + failure);
+				if (failure != null) {
+					failed++;
+				}
+			}
+		}
+		if (failed > 0) {
+			System.out.printf("%d of %d runs failed%n", failed, runs);
+			System.exit(1);
+		}
+		System.out.printf("All %d runs passed%n", runs);
+	}
+
+	/**
+	 * @return why the run failed, or null if it passed
+	 */
+	private static String run(Properties automailProperties, int seed) {
+		HashMap<Boolean, Integer> seedMap = new HashMap<>();
+		seedMap.put(true, seed);
+		// the mail pool reports trouble by printing stack traces
+		PrintStream err = System.err;
+		ByteArrayOutputStream printed = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(printed, true));
+		try {
+			Simulation simulation = new Simulation(automailProperties, seedMap);
+			if (!Simulation.class.desiredAssertionStatus()) {
+				return "assertions are off";
+			}
+			simulation.run();
+			if (printed.size() > 0) {
+				return "printed " + printed.toString().split("\\R", 2)[0];
+			}
+			if (simulation.getPoolSize() > MAX_POOL) {
+				return simulation.getPoolSize() + " items left in the pool";
+			}
+			return null;
+		} catch (RuntimeException | AssertionError e) {
+			return String.valueOf(e);
+		} finally {
+			System.setErr(err);
+		}
+	}
+}
@@ -0,0 +1,316 @@
+package tools;
+
+import automail.Simulation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Results of past runs on disk, so a run repeated with the same properties,
+ * seed and simulation code is read back instead of simulated again.
+ *
+ * An entry is named by the SHA-256 of the sorted properties, the seed and
+ * the class files of the automail, strategies and exceptions packages, so
+ * changing any strategy gives new entries. Files the simulation reads, such
+ * as a Replay_File, are keyed by their contents as well as their name, so
+ * editing one gives new entries too. Tool settings such as Sweep_ and
+ * Cache_ properties are left out of the key. An entry is the RESULT line of
+ * the run, written to a temporary file and moved into place, so processes
+ * sharing the directory never read half an entry. Reading an entry marks it
+ * as used, and once the directory is over Cache_Max_Bytes the least recently
+ * used entries are removed.
+ */
+public class ResultCache {
+
+	private static final String SUFFIX = ".result";
+	/** Properties that set up the tools rather than the simulation */
+	private static final String[] TOOL_PREFIXES = {"Cache_", "Sweep_",
+		"Daemon_", "LoadTest_", "LowerBound_", "MonteCarlo_", "Tuner_",
+		"Allocation_"};
+	private static final String[] CODE_PACKAGES = {"automail", "strategies",
+		"exceptions"};
+	/** Properties naming a file the simulation reads its input from */
+	private static final String[] INPUT_FILES = {"Replay_File"};
+
+	private static final Map<Path, ResultCache> open =
+		new HashMap<Path, ResultCache>();
+	private static byte[] codeHash = null;
+
+	private final Path directory;
+	private final long maxBytes;
+	/** Bytes in the directory, as far as this process knows */
+	private long size;
+	private long hits = 0;
+	private long misses = 0;
+
+	private ResultCache(Path directory, long maxBytes) throws IOException {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		Files.createDirectories(directory);
+		size = 0;
+		for (Path entry : entries()) {
+			size += sizeOf(entry);
+		}
+	}
+
+	/**
+	 * @return the cache in Cache_Dir, shared by everyone in this process
+	 * 	using that directory, or null when Cache_Dir is not set
+	 */
+	public static synchronized ResultCache open(Properties automailProperties)
+		throws IOException {
+		String name = automailProperties.getProperty("Cache_Dir");
+		if (name == null) {
+			return null;
+		}
+		Path directory = Paths.get(name).toAbsolutePath().normalize();
+		ResultCache cache = open.get(directory);
+		if (cache == null) {
+			cache = new ResultCache(directory, Long.parseLong(automailProperties
+				.getProperty("Cache_Max_Bytes", "100000000")));
+			open.put(directory, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * @return the name of the entry for a run
+	 */
+	public static String key(Properties properties, int seed) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(codeHash());
+			TreeMap<String, String> sorted = new TreeMap<String, String>();
+			for (String name : properties.stringPropertyNames()) {
+				if (!isToolSetting(name)) {
+					sorted.put(name, properties.getProperty(name));
+				}
+			}
+			for (Map.Entry<String, String> setting : sorted.entrySet()) {
+				digest.update((setting.getKey() + '=' + setting.getValue() +
+					'\n').getBytes(StandardCharsets.UTF_8));
+			}
+			for (String name : INPUT_FILES) {
+				String file = properties.getProperty(name);
+				if (file == null) {
+					continue;
+				}
+				try {
+					digest.update(Files.readAllBytes(Paths.get(file)));
+				} catch (IOException e) {
+					// the run fails too, and is never stored under this key
+					digest.update("unreadable".getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			digest.update(("seed=" + seed).getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest.digest()) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+					.append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static boolean isToolSetting(String name) {
+		for (String prefix : TOOL_PREFIXES) {
+			if (name.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the hash of the simulation classes, worked out once
+	 */
+	private static synchronized byte[] codeHash() {
+		if (codeHash != null) {
+			return codeHash;
+		}
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			Path location = Paths.get(Simulation.class.getProtectionDomain()
+				.getCodeSource().getLocation().toURI());
+			if (Files.isDirectory(location)) {
+				for (String pkg : CODE_PACKAGES) {
+					List<Path> classes = new ArrayList<Path>();
+					try (Stream<Path> files = Files.list(location.resolve(pkg))) {
+						files.filter(file -> file.toString().endsWith(".class"))
+							.forEach(classes::add);
+					}
+					Collections.sort(classes);
+					for (Path file : classes) {
+						digest.update(file.getFileName().toString()
+							.getBytes(StandardCharsets.UTF_8));
+						digest.update(Files.readAllBytes(file));
+					}
+				}
+			} else {
+				try (JarFile jar = new JarFile(location.toFile())) {
+					List<String> names = new ArrayList<String>();
+					Enumeration<JarEntry> entries = jar.entries();
+					while (entries.hasMoreElements()) {
+						String name = entries.nextElement().getName();
+						for (String pkg : CODE_PACKAGES) {
+							if (name.startsWith(pkg + "/") &&
+								name.endsWith(".class")) {
+								names.add(name);
+							}
+						}
+					}
+					Collections.sort(names);
+					byte[] buffer = new byte[8192];
+					for (String name : names) {
+						digest.update(name.getBytes(StandardCharsets.UTF_8));
+						try (InputStream in =
+							jar.getInputStream(jar.getEntry(name))) {
+							int read;
+							while ((read = in.read(buffer)) > 0) {
+								digest.update(buffer, 0, read);
+							}
+						}
+					}
+				}
+			}
+			codeHash = digest.digest();
+			return codeHash;
+		} catch (IOException | URISyntaxException |
+			NoSuchAlgorithmException e) {
+			throw new IllegalStateException(
+				"Cannot read the simulation classes", e);
+		}
+	}
+
+	/**
+	 * @return the result stored under the key, with the given id, or null
+	 */
+	public RunProtocol.Result get(String key, long id) {
+		Path entry = directory.resolve(key + SUFFIX);
+		try {
+			String line = new String(Files.readAllBytes(entry),
+				StandardCharsets.UTF_8).trim();
+			Files.setLastModifiedTime(entry,
+				FileTime.fromMillis(System.currentTimeMillis()));
+			RunProtocol.Result stored = RunProtocol.Result.parse(line);
+			synchronized (this) {
+				hits++;
+			}
+			return new RunProtocol.Result(id, stored.finalTime, stored.score,
+				stored.delivered, stored.latencies);
+		} catch (NoSuchFileException e) {
+			// a miss, or removed by another process
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		synchronized (this) {
+			misses++;
+		}
+		return null;
+	}
+
+	public void put(String key, RunProtocol.Result result) {
+		byte[] line = (result.toLine() + "\n").getBytes(StandardCharsets.UTF_8);
+		try {
+			Path temporary = Files.createTempFile(directory, key, ".tmp");
+			Files.write(temporary, line);
+			Files.move(temporary, directory.resolve(key + SUFFIX),
+				StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		synchronized (this) {
+			size += line.length;
+			if (size > maxBytes) {
+				evict();
+			}
+		}
+	}
+
+	/**
+	 * Remove the least recently used entries until a tenth under the limit
+	 */
+	private void evict() {
+		List<Path> entries = entries();
+		Map<Path, FileTime> used = new HashMap<Path, FileTime>();
+		size = 0;
+		for (Path entry : entries) {
+			try {
+				used.put(entry, Files.getLastModifiedTime(entry));
+				size += Files.size(entry);
+			} catch (IOException e) {
+				// removed by another process
+			}
+		}
+		entries.removeIf(entry -> !used.containsKey(entry));
+		entries.sort((a, b) -> used.get(a).compareTo(used.get(b)));
+		long target = maxBytes - maxBytes / 10;
+		for (Path entry : entries) {
+			if (size <= target) {
+				break;
+			}
+			long entrySize = sizeOf(entry);
+			try {
+				Files.deleteIfExists(entry);
+				size -= entrySize;
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private List<Path> entries() {
+		List<Path> entries = new ArrayList<Path>();
+		try (DirectoryStream<Path> files =
+			Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path file : files) {
+				entries.add(file);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return entries;
+	}
+
+	private static long sizeOf(Path entry) {
+		try {
+			return Files.size(entry);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+}
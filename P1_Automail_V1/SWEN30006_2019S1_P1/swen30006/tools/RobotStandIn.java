@@ -0,0 +1,191 @@
+package tools;
+
+import automail.Building;
+import automail.Clock;
+import automail.MailGenerator;
+import automail.MailItem;
+import automail.PriorityMailItem;
+import automail.Robot;
+import automail.Simulation;
+import strategies.IMailPool;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stands in for the robots and the mail of a building, to drive and load
+ * test RealTimeDispatcher. Mail is made by MailGenerator as in continuous
+ * mode, one tick every RealTime_Tick_Micros of real time, and sent as it
+ * arrives. A robot told to move reports it has arrived once it would have,
+ * taking the same number of ticks as in the simulation.
+ *
+ * From the dispatcher:
+ *   START                         start sending mail
+ *   MOVE robot floor ticksPerFloor
+ *   QUIT
+ * To the dispatcher:
+ *   MAIL floor weight priority    priority 0 for ordinary mail
+ *   AT robot                      the robot got where it was last sent
+ *   END                           RealTime_Seconds of mail have been sent
+ *
+ * Usage: java tools.RobotStandIn host port [properties file]
+ */
+public class RobotStandIn {
+
+	public static final String START = "START";
+	public static final String MOVE = "MOVE";
+	public static final String QUIT = "QUIT";
+	public static final String MAIL = "MAIL";
+	public static final String AT = "AT";
+	public static final String END = "END";
+
+	private final Properties automailProperties;
+	private final PrintWriter out;
+	private final long tickNanos;
+	/** Where each robot was last sent */
+	private final int[] floors;
+	private final ScheduledExecutorService timer =
+		Executors.newSingleThreadScheduledExecutor();
+
+	public RobotStandIn(Properties automailProperties, PrintWriter out) {
+		this.automailProperties = automailProperties;
+		this.out = out;
+		tickNanos = 1000 * Long.parseLong(
+			automailProperties.getProperty("RealTime_Tick_Micros", "1000"));
+		floors = new int[Integer.parseInt(
+			automailProperties.getProperty("Robots"))];
+		Arrays.fill(floors, Building.MAILROOM_LOCATION);
+	}
+
+	public static void main(String[] args) throws IOException {
+		Properties automailProperties = Simulation.loadProperties(
+			args.length > 2 ? args[2] : "automail.properties");
+		try (Socket socket = new Socket(args[0], Integer.parseInt(args[1]))) {
+			socket.setTcpNoDelay(true);
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+				socket.getInputStream(), StandardCharsets.UTF_8));
+			RobotStandIn standIn = new RobotStandIn(automailProperties,
+				new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),
+				StandardCharsets.UTF_8)));
+			standIn.serve(in);
+		}
+	}
+
+	/**
+	 * Follow the dispatcher's orders until QUIT or the connection closes
+	 */
+	public void serve(BufferedReader in) throws IOException {
+		try {
+			String line;
+			while ((line = in.readLine()) != null && !line.equals(QUIT)) {
+				if (line.startsWith(MOVE)) {
+					String[] fields = line.split(" ");
+					move(Integer.parseInt(fields[1]),
+						Integer.parseInt(fields[2]),
+						Integer.parseInt(fields[3]));
+				} else if (line.equals(START)) {
+					Thread mail = new Thread(this::sendMail);
+					mail.setDaemon(true);
+					mail.start();
+				}
+			}
+		} finally {
+			timer.shutdownNow();
+		}
+	}
+
+	/**
+	 * Report the robot at the floor after the ticks it takes to get there,
+	 * and one more to deliver or enter the mailroom
+	 */
+	private void move(int robot, int floor, int ticksPerFloor) {
+		long ticks = Math.abs(floor - floors[robot]) * ticksPerFloor + 1;
+		floors[robot] = floor;
+		timer.schedule(() -> send(AT + " " + robot), ticks * tickNanos,
+			TimeUnit.NANOSECONDS);
+	}
+
+	private synchronized void send(String line) {
+		out.println(line);
+		out.flush();
+	}
+
+	/**
+	 * Send mail tick by tick for RealTime_Seconds, then END
+	 */
+	private void sendMail() {
+		Simulation.VERBOSE = false;
+		Building.FLOORS =
+			Integer.parseInt(automailProperties.getProperty("Floors"));
+		HashMap<Boolean, Integer> seedMap = new HashMap<>();
+		String seed = automailProperties.getProperty("Seed");
+		if (seed != null) {
+			seedMap.put(true, Integer.parseInt(seed));
+		}
+		MailGenerator generator = new MailGenerator(
+			Integer.parseInt(automailProperties.getProperty("Mail_to_Create")),
+			Integer.parseInt(automailProperties.getProperty("Mail_Max_Weight")),
+			new Sender(), seedMap);
+		generator.setArrivalProcess(Simulation.arrivalProcess(
+			automailProperties));
+		generator.setMailMix(Simulation.mailMix(automailProperties));
+		long ticks = (long) (1e9 * Double.parseDouble(automailProperties
+			.getProperty("RealTime_Seconds", "10")) / tickNanos);
+		long start = System.nanoTime();
+		for (long tick = 0; tick < ticks; tick++) {
+			long wait = start + tick * tickNanos - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			}
+			generator.step();
+			Clock.Tick();
+		}
+		send(END);
+	}
+
+	/** Sends mail to the dispatcher as the generator adds it */
+	private class Sender implements IMailPool {
+
+		@Override
+		public void addToPool(MailItem mailItem) {
+			send(String.format("%s %d %d %d", MAIL, mailItem.getDestFloor(),
+				mailItem.getWeight(), mailItem instanceof PriorityMailItem ?
+				((PriorityMailItem) mailItem).getPriorityLevel() : 0));
+		}
+
+		@Override
+		public void step() {
+		}
+
+		@Override
+		public void registerWaiting(Robot robot) {
+		}
+
+		@Override
+		public void deregister(Robot robot) {
+		}
+
+		@Override
+		public boolean priorityArrival(PriorityMailItem mailItem,
+			Robot[] robots) {
+			return false;
+		}
+
+		@Override
+		public int getPoolSize() {
+			return 0;
+		}
+	}
+}
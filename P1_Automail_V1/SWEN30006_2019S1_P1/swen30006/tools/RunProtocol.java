@@ -0,0 +1,164 @@
+package tools;
+
+import automail.LatencyHistogram;
+import automail.Simulation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Properties;
+
+/**
+ * Line based messages for handing simulation runs to other processes, and
+ * running them. A run is sent as
+ *
+ *   RUN id seed
+ *   the properties of the run, as in a properties file
+ *   END
+ *
+ * and answered with one line, either
+ *
+ *   RESULT id finalTime score delivered histogram
+ *   FAILED id message
+ *
+ * where the histogram is written by LatencyHistogram.toString, or - if no
+ * latency was recorded.
+ */
+public class RunProtocol {
+
+	public static final String RUN = "RUN";
+	public static final String END = "END";
+	public static final String RESULT = "RESULT";
+	public static final String FAILED = "FAILED";
+
+	/** A run read from a stream */
+	public static class Run {
+		public final long id;
+		public final int seed;
+		public final Properties properties;
+
+		public Run(long id, int seed, Properties properties) {
+			this.id = id;
+			this.seed = seed;
+			this.properties = properties;
+		}
+	}
+
+	/** What a run gives back */
+	public static class Result {
+		public final long id;
+		public final long finalTime;
+		public final double score;
+		public final long delivered;
+		public final LatencyHistogram latencies;
+
+		public Result(long id, long finalTime, double score, long delivered,
+			LatencyHistogram latencies) {
+			this.id = id;
+			this.finalTime = finalTime;
+			this.score = score;
+			this.delivered = delivered;
+			this.latencies = latencies;
+		}
+
+		public String toLine() {
+			String histogram = latencies.toString();
+			return String.format("%s %d %d %s %d %s", RESULT, id, finalTime,
+				Double.toString(score), delivered,
+				histogram.isEmpty() ? "-" : histogram);
+		}
+
+		/**
+		 * @param line a RESULT line, the inverse of toLine
+		 */
+		public static Result parse(String line) {
+			String[] fields = line.split(" ");
+			assert(fields.length == 6 && fields[0].equals(RESULT));
+			return new Result(Long.parseLong(fields[1]),
+				Long.parseLong(fields[2]), Double.parseDouble(fields[3]),
+				Long.parseLong(fields[4]), LatencyHistogram.parse(
+					fields[5].equals("-") ? "" : fields[5]));
+		}
+	}
+
+	public static void writeRun(PrintWriter out, long id, int seed,
+		Properties properties) throws IOException {
+		StringWriter text = new StringWriter();
+		properties.store(text, null);
+		out.println(RUN + " " + id + " " + seed);
+		for (String line : text.toString().split("\\R")) {
+			if (!line.startsWith("#")) {
+				out.println(line);
+			}
+		}
+		out.println(END);
+		out.flush();
+	}
+
+	/**
+	 * @param first the RUN line already read
+	 * @return the run, with its properties read up to the END line
+	 */
+	public static Run readRun(String first, BufferedReader in)
+		throws IOException {
+		String[] fields = first.split(" ");
+		StringBuilder text = new StringBuilder();
+		String line;
+		while ((line = in.readLine()) != null && !line.equals(END)) {
+			text.append(line).append('\n');
+		}
+		if (line == null) {
+			throw new IOException("Stream ended inside run " + fields[1]);
+		}
+		Properties properties = new Properties();
+		properties.load(new StringReader(text.toString()));
+		return new Run(Long.parseLong(fields[1]), Integer.parseInt(fields[2]),
+			properties);
+	}
+
+	public static String failedLine(long id, Throwable cause) {
+		return FAILED + " " + id + " " +
+			String.valueOf(cause).replaceAll("\\s+", " ");
+	}
+
+	/**
+	 * Run a simulation quietly in this process, or read its result back
+	 * from the ResultCache in Cache_Dir when it has been run before
+	 */
+	public static Result run(Run run) {
+		Properties automailProperties = new Properties();
+		automailProperties.putAll(run.properties);
+		automailProperties.setProperty("Verbose", "false");
+		automailProperties.setProperty("Stats_Window", "0");
+		// runs side by side would all write the one file
+		automailProperties.remove("Delivery_Log");
+		ResultCache cache = null;
+		String key = null;
+		try {
+			cache = ResultCache.open(automailProperties);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		if (cache != null) {
+			key = ResultCache.key(automailProperties, run.seed);
+			Result cached = cache.get(key, run.id);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		HashMap<Boolean, Integer> seedMap = new HashMap<>();
+		seedMap.put(true, run.seed);
+		Simulation simulation = new Simulation(automailProperties, seedMap);
+		simulation.run();
+		Result result = new Result(run.id, simulation.getFinalTime(),
+			simulation.getTotalScore(), simulation.getMailDelivered(),
+			simulation.getLatencies());
+		if (cache != null) {
+			cache.put(key, result);
+		}
+		return result;
+	}
+}
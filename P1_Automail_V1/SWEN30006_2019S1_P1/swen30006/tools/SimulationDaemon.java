@@ -0,0 +1,145 @@
+package tools;
+
+import automail.Simulation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Keeps one JVM running simulations on request, so runs skip JVM startup
+ * and, once warmed up, run compiled code. The properties file is read once,
+ * each run gets a new Simulation with its properties laid over it.
+ *
+ * Requests are lines on stdin, or on connections to Daemon_Port when set:
+ *
+ *   RUN id seed, properties, END  as in RunProtocol, answered by its RESULT
+ *                                 or FAILED line
+ *   WARMUP runs                   run the base properties that many times,
+ *                                 answered by WARM runs milliseconds per run
+ *   QUIT                          answered by BYE, stops the daemon
+ *
+ * Runs are made one at a time, since the simulation keeps some settings in
+ * static fields.
+ *
+ * Usage: java tools.SimulationDaemon [properties file]
+ */
+public class SimulationDaemon {
+
+	public static final String WARMUP = "WARMUP";
+	public static final String WARM = "WARM";
+	public static final String QUIT = "QUIT";
+	public static final String BYE = "BYE";
+
+	private final Properties baseProperties;
+	private volatile boolean running = true;
+
+	public SimulationDaemon(Properties automailProperties) {
+		baseProperties = automailProperties;
+	}
+
+	public static void main(String[] args) throws IOException {
+		Properties automailProperties = Simulation.loadProperties(
+			args.length > 0 ? args[0] : "automail.properties");
+		SimulationDaemon daemon = new SimulationDaemon(automailProperties);
+		String port = automailProperties.getProperty("Daemon_Port");
+		if (port == null) {
+			daemon.serve(new BufferedReader(new InputStreamReader(System.in,
+				StandardCharsets.UTF_8)), new PrintWriter(new OutputStreamWriter(
+				System.out, StandardCharsets.UTF_8)));
+			return;
+		}
+		// closed by the connection that asks to quit as well, to stop accept
+		ServerSocket server = new ServerSocket(Integer.parseInt(port), 50,
+			InetAddress.getLoopbackAddress());
+		try {
+			System.out.println("Listening on " + server.getLocalPort());
+			while (daemon.running) {
+				Socket socket = server.accept();
+				Thread connection = new Thread(() -> {
+					try (Socket client = socket) {
+						daemon.serve(new BufferedReader(new InputStreamReader(
+							client.getInputStream(), StandardCharsets.UTF_8)),
+							new PrintWriter(new OutputStreamWriter(
+							client.getOutputStream(), StandardCharsets.UTF_8)));
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+					if (!daemon.running) {
+						try {
+							server.close();
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					}
+				});
+				connection.start();
+			}
+		} catch (IOException e) {
+			if (daemon.running) {
+				throw e;
+			}
+		} finally {
+			server.close();
+		}
+	}
+
+	/**
+	 * Answer requests until the stream ends or QUIT
+	 */
+	public void serve(BufferedReader in, PrintWriter out) throws IOException {
+		String line;
+		while (running && (line = in.readLine()) != null) {
+			line = line.trim();
+			if (line.startsWith(RunProtocol.RUN + " ")) {
+				RunProtocol.Run run = RunProtocol.readRun(line, in);
+				Properties properties = new Properties();
+				properties.putAll(baseProperties);
+				properties.putAll(run.properties);
+				out.println(run(new RunProtocol.Run(run.id, run.seed,
+					properties)));
+			} else if (line.startsWith(WARMUP)) {
+				String[] fields = line.split("\\s+");
+				int runs = fields.length > 1 ? Integer.parseInt(fields[1]) : 20;
+				out.printf("%s %d %.3f%n", WARM, runs, warmUp(runs));
+			} else if (line.equals(QUIT)) {
+				running = false;
+				out.println(BYE);
+			} else if (!line.isEmpty()) {
+				out.println(RunProtocol.FAILED + " - unknown request " + line);
+			}
+			out.flush();
+		}
+	}
+
+	private synchronized String run(RunProtocol.Run run) {
+		try {
+			return RunProtocol.run(run).toLine();
+		} catch (RuntimeException | AssertionError e) {
+			return RunProtocol.failedLine(run.id, e);
+		}
+	}
+
+	/**
+	 * Run the base properties over a few seeds so the simulation is compiled,
+	 * always simulated, never read back from the result cache
+	 * @return milliseconds per run
+	 */
+	private synchronized double warmUp(int runs) {
+		Properties properties = new Properties();
+		properties.putAll(baseProperties);
+		properties.remove("Cache_Dir");
+		long start = System.nanoTime();
+		for (int seed = 1; seed <= runs; seed++) {
+			RunProtocol.run(new RunProtocol.Run(0, seed, properties));
+		}
+		return runs == 0 ? 0 : (System.nanoTime() - start) / 1e6 / runs;
+	}
+}
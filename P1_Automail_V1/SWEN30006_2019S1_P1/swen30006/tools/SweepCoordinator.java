@@ -0,0 +1,359 @@
+package tools;
+
+import automail.LatencyHistogram;
+import automail.Simulation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Runs a sweep of seeds and configurations on SweepWorker processes,
+ * started on this machine or connecting from others, and aggregates the
+ * results as they come in.
+ *
+ * Each configuration and seed is a shard. Workers pull shards when idle.
+ * Once every shard is handed out, an idle worker takes a copy of the shard
+ * that has been running longest, so one slow worker does not hold up the
+ * end of the sweep, and the first result wins. A shard whose run fails or
+ * whose worker goes away is handed out again, up to Sweep_Retries times.
+ *
+ * Usage: java tools.SweepCoordinator [properties file]
+ * Sweep_Configs lists the configurations, separated by |, each a list of
+ * key=value overrides separated by ; with an empty one for the file as is.
+ * Sweep_Seeds lists seeds and ranges such as 1-50,77.
+ */
+public class SweepCoordinator {
+
+	/** One seed of one configuration */
+	private static class Shard {
+		final int id;
+		final int config;
+		final int seed;
+		int attempts = 0;
+		/** Copies running now */
+		int running = 0;
+		long started;
+		boolean done = false;
+
+		Shard(int id, int config, int seed) {
+			this.id = id;
+			this.config = config;
+			this.seed = seed;
+		}
+	}
+
+	/** Results of one configuration so far */
+	private static class Aggregate {
+		final String name;
+		int runs = 0;
+		int failed = 0;
+		double time = 0;
+		double score = 0;
+		double squaredScore = 0;
+		final LatencyHistogram latencies = new LatencyHistogram();
+
+		Aggregate(String name) {
+			this.name = name;
+		}
+
+		void add(RunProtocol.Result result) {
+			runs++;
+			time += result.finalTime;
+			score += result.score;
+			squaredScore += result.score * result.score;
+			latencies.merge(result.latencies);
+		}
+
+		double meanScore() {
+			return runs == 0 ? 0 : score / runs;
+		}
+
+		double scoreDeviation() {
+			if (runs < 2) {
+				return 0;
+			}
+			double mean = meanScore();
+			return Math.sqrt(Math.max(0,
+				(squaredScore - runs * mean * mean) / (runs - 1)));
+		}
+	}
+
+	private final List<Properties> configs = new ArrayList<Properties>();
+	private final List<Aggregate> aggregates = new ArrayList<Aggregate>();
+	private final List<Shard> shards = new ArrayList<Shard>();
+	private final Deque<Shard> pending = new ArrayDeque<Shard>();
+	private final int retries;
+	private int remaining;
+	private int connections = 0;
+
+	public SweepCoordinator(Properties automailProperties) {
+		retries = Integer.parseInt(
+			automailProperties.getProperty("Sweep_Retries", "2"));
+		for (String config : automailProperties.getProperty(
+			"Sweep_Configs", "").split("\\|", -1)) {
+			Properties properties = new Properties();
+			properties.putAll(automailProperties);
+			for (String setting : config.split(";")) {
+				int equals = setting.indexOf('=');
+				if (equals > 0) {
+					properties.setProperty(setting.substring(0, equals).trim(),
+						setting.substring(equals + 1).trim());
+				}
+			}
+			configs.add(properties);
+			aggregates.add(new Aggregate(config.trim().isEmpty() ? "(base)" :
+				config.trim()));
+		}
+		List<Integer> seeds = parseSeeds(
+			automailProperties.getProperty("Sweep_Seeds", "1-10"));
+		for (int config = 0; config < configs.size(); config++) {
+			for (int seed : seeds) {
+				Shard shard = new Shard(shards.size(), config, seed);
+				shards.add(shard);
+				pending.add(shard);
+			}
+		}
+		remaining = shards.size();
+	}
+
+	/**
+	 * @param text seeds and ranges such as 1-50,77
+	 */
+	static List<Integer> parseSeeds(String text) {
+		List<Integer> seeds = new ArrayList<Integer>();
+		for (String part : text.split(",")) {
+			part = part.trim();
+			int dash = part.indexOf('-', 1);
+			if (dash < 0) {
+				seeds.add(Integer.parseInt(part));
+			} else {
+				int last = Integer.parseInt(part.substring(dash + 1));
+				for (int seed = Integer.parseInt(part.substring(0, dash));
+					seed <= last; seed++) {
+					seeds.add(seed);
+				}
+			}
+		}
+		return seeds;
+	}
+
+	public static void main(String[] args) throws IOException,
+		InterruptedException {
+		Properties automailProperties = Simulation.loadProperties(
+			args.length > 0 ? args[0] : "automail.properties");
+		int workers = Integer.parseInt(automailProperties.getProperty(
+			"Sweep_Workers",
+			String.valueOf(Runtime.getRuntime().availableProcessors())));
+		int port = Integer.parseInt(
+			automailProperties.getProperty("Sweep_Port", "0"));
+		InetAddress bind = InetAddress.getByName(
+			automailProperties.getProperty("Sweep_Bind", "127.0.0.1"));
+		SweepCoordinator coordinator = new SweepCoordinator(automailProperties);
+
+		List<Process> processes = new ArrayList<Process>();
+		try (ServerSocket server = new ServerSocket(port, 50, bind)) {
+			System.out.printf("Sweep of %d runs listening on %s:%d%n",
+				coordinator.shards.size(), bind.getHostAddress(),
+				server.getLocalPort());
+			Thread acceptor = new Thread(() -> coordinator.accept(server));
+			acceptor.setDaemon(true);
+			acceptor.start();
+			String java = System.getProperty("java.home") + File.separator +
+				"bin" + File.separator + "java";
+			for (int i = 0; i < workers; i++) {
+				ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+					System.getProperty("java.class.path"),
+					SweepWorker.class.getName(), "127.0.0.1",
+					String.valueOf(server.getLocalPort()));
+				builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+				builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+				processes.add(builder.start());
+			}
+			coordinator.awaitCompletion(processes);
+		} finally {
+			for (Process process : processes) {
+				process.destroy();
+			}
+		}
+		coordinator.printResults();
+	}
+
+	private void accept(ServerSocket server) {
+		while (!server.isClosed()) {
+			try {
+				Socket socket = server.accept();
+				Thread connection = new Thread(() -> serve(socket));
+				connection.setDaemon(true);
+				connection.start();
+			} catch (IOException e) {
+				if (!server.isClosed()) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hand shards to one worker until the sweep is over or the worker goes
+	 */
+	private void serve(Socket socket) {
+		Set<Shard> held = new HashSet<Shard>();
+		synchronized (this) {
+			connections++;
+		}
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+				socket.getInputStream(), StandardCharsets.UTF_8));
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(
+				socket.getOutputStream(), StandardCharsets.UTF_8));
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.startsWith(RunProtocol.RESULT)) {
+					RunProtocol.Result result = RunProtocol.Result.parse(line);
+					Shard shard = shards.get((int) result.id);
+					held.remove(shard);
+					complete(shard, result);
+				} else if (line.startsWith(RunProtocol.FAILED)) {
+					Shard shard = shards.get(
+						Integer.parseInt(line.split(" ")[1]));
+					held.remove(shard);
+					fail(shard, line);
+				} else if (line.equals(SweepWorker.READY)) {
+					Shard shard = next();
+					if (shard == null) {
+						out.println(SweepWorker.DONE);
+						out.flush();
+						break;
+					}
+					held.add(shard);
+					RunProtocol.writeRun(out, shard.id, shard.seed,
+						configs.get(shard.config));
+				}
+			}
+		} catch (IOException | InterruptedException e) {
+			// the worker is gone, what it held is handed out again below
+		} finally {
+			synchronized (this) {
+				connections--;
+				for (Shard shard : held) {
+					fail(shard, "worker lost");
+				}
+			}
+			try {
+				socket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @return the next shard to run, waiting while every shard left is
+	 * 	running on two workers, null once the sweep is over
+	 */
+	private synchronized Shard next() throws InterruptedException {
+		while (remaining > 0) {
+			Shard shard = pending.poll();
+			if (shard == null) {
+				// steal the longest running shard
+				for (Shard running : shards) {
+					if (!running.done && running.running == 1 && (shard == null
+						|| running.started < shard.started)) {
+						shard = running;
+					}
+				}
+			}
+			if (shard != null) {
+				if (shard.running == 0) {
+					shard.started = System.nanoTime();
+					shard.attempts++;
+				}
+				shard.running++;
+				return shard;
+			}
+			wait();
+		}
+		return null;
+	}
+
+	private synchronized void complete(Shard shard, RunProtocol.Result result) {
+		shard.running--;
+		if (shard.done) {
+			return;
+		}
+		shard.done = true;
+		remaining--;
+		Aggregate aggregate = aggregates.get(shard.config);
+		aggregate.add(result);
+		System.out.printf("[%d/%d] %s seed %d: time %d score %.2f | mean score"
+			+ " %.2f over %d%n", shards.size() - remaining, shards.size(),
+			aggregate.name, shard.seed, result.finalTime, result.score,
+			aggregate.meanScore(), aggregate.runs);
+		notifyAll();
+	}
+
+	private synchronized void fail(Shard shard, String reason) {
+		shard.running--;
+		if (shard.done || shard.running > 0) {
+			return;
+		}
+		if (shard.attempts <= retries) {
+			System.out.printf("%s seed %d failed (%s), retrying%n",
+				aggregates.get(shard.config).name, shard.seed, reason);
+			pending.addFirst(shard);
+		} else {
+			System.out.printf("%s seed %d failed (%s), giving up%n",
+				aggregates.get(shard.config).name, shard.seed, reason);
+			shard.done = true;
+			remaining--;
+			aggregates.get(shard.config).failed++;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Wait for every shard, or until the workers started here are all gone
+	 * and no other worker is connected
+	 */
+	private synchronized void awaitCompletion(List<Process> processes)
+		throws InterruptedException {
+		while (remaining > 0) {
+			wait(1000);
+			if (remaining > 0 && connections == 0 && !processes.isEmpty() &&
+				processes.stream().noneMatch(Process::isAlive)) {
+				System.out.printf("All workers are gone, %d runs left%n",
+					remaining);
+				return;
+			}
+		}
+	}
+
+	private void printResults() {
+		System.out.printf("%-40s %5s %6s %10s %14s %12s %6s %6s%n", "Config",
+			"Runs", "Failed", "Mean time", "Mean score", "Score sd", "p50",
+			"p99");
+		for (Aggregate aggregate : aggregates) {
+			System.out.printf("%-40s %5d %6d %10.1f %14.2f %12.2f %6d %6d%n",
+				aggregate.name, aggregate.runs, aggregate.failed,
+				aggregate.runs == 0 ? 0 : aggregate.time / aggregate.runs,
+				aggregate.meanScore(), aggregate.scoreDeviation(),
+				aggregate.latencies.getPercentile(50),
+				aggregate.latencies.getPercentile(99));
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Runs simulations for a SweepCoordinator. The worker asks for a run
+ * whenever it is idle, so faster workers take more of the sweep, and stops
+ * when the coordinator has nothing left.
+ *
+ * Usage: java tools.SweepWorker host port
+ */
+public class SweepWorker {
+
+	public static final String READY = "READY";
+	public static final String DONE = "DONE";
+
+	public static void main(String[] args) throws IOException {
+		try (Socket socket = new Socket(args[0], Integer.parseInt(args[1]))) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+				socket.getInputStream(), StandardCharsets.UTF_8));
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(
+				socket.getOutputStream(), StandardCharsets.UTF_8));
+			while (true) {
+				out.println(READY);
+				out.flush();
+				String line = in.readLine();
+				if (line == null || line.equals(DONE)) {
+					return;
+				}
+				RunProtocol.Run run = RunProtocol.readRun(line, in);
+				try {
+					out.println(RunProtocol.run(run).toLine());
+				} catch (RuntimeException | AssertionError e) {
+					out.println(RunProtocol.failedLine(run.id, e));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package tools;
+
+import automail.Simulation;
+import strategies.StrategyParameters;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Searches the strategy parameters for the configuration with the lowest
+ * mean score. Tuner_Candidates configurations are drawn at random from
+ * Tuner_Space, as StrategyParameters reads it, and raced against the
+ * properties file as it is by successive halving: every candidate left runs
+ * on the first seeds, only the best 1 / Tuner_Eta of them go on, and those
+ * run on Tuner_Eta times as many seeds, up to Tuner_Max_Seeds. Poor
+ * candidates are dropped after a few runs, so most runs go to the good ones.
+ * Configurations the building cannot run, with more Zones than robots or
+ * floors, are not drawn.
+ *
+ * A run that throws scores infinity, so its candidate is dropped, and is
+ * reported with the results; a failed assertion stops the search.
+ *
+ * Candidates and seeds are drawn from Tuner_Seed alone and results are taken
+ * in order whatever order the runs finish in, so a master seed always gives
+ * the same search and the same answer. Every candidate runs on the same
+ * seeds, so they are compared on the same mail.
+ *
+ * Usage: java tools.Tuner [properties file]
+ */
+public class Tuner {
+
+	/** A configuration and its scores so far, in seed order */
+	private static class Candidate {
+		final int index;
+		final Map<String, String> settings;
+		final List<Double> scores = new ArrayList<Double>();
+		int failures = 0;
+		/** What the first failed run threw, null if none failed */
+		Throwable failure = null;
+
+		Candidate(int index, Map<String, String> settings) {
+			this.index = index;
+			this.settings = settings;
+		}
+
+		double mean() {
+			double sum = 0;
+			for (double score : scores) {
+				sum += score;
+			}
+			return scores.isEmpty() ? Double.POSITIVE_INFINITY :
+				sum / scores.size();
+		}
+
+		String name() {
+			return settings.isEmpty() ? "(base)" :
+				StrategyParameters.format(settings);
+		}
+	}
+
+	/** Best mean first, the earlier candidate on a tie */
+	private static final Comparator<Candidate> BY_MEAN =
+		Comparator.comparingDouble(Candidate::mean)
+			.thenComparingInt(candidate -> candidate.index);
+
+	private final Properties automailProperties;
+	private final Random random;
+	private final List<Candidate> candidates = new ArrayList<Candidate>();
+	/** Seeds in the order candidates run on them */
+	private final List<Integer> seeds = new ArrayList<Integer>();
+	private final int minSeeds;
+	private final int maxSeeds;
+	private final int eta;
+	private final int threads;
+	private long runs = 0;
+	private Candidate best = null;
+
+	public Tuner(Properties automailProperties) {
+		this.automailProperties = automailProperties;
+		random = new Random(Long.parseLong(
+			automailProperties.getProperty("Tuner_Seed", "1")));
+		StrategyParameters space = StrategyParameters.parse(automailProperties
+			.getProperty("Tuner_Space", StrategyParameters.DEFAULT_SPACE));
+		for (StrategyParameters.Parameter parameter : space.getParameters()) {
+			if (Arrays.asList(MonteCarlo.SHARED).contains(parameter.name)) {
+				throw new IllegalArgumentException(parameter.name +
+					" cannot differ between configurations run together");
+			}
+		}
+		int count = Integer.parseInt(
+			automailProperties.getProperty("Tuner_Candidates", "32"));
+		minSeeds = Integer.parseInt(
+			automailProperties.getProperty("Tuner_Min_Seeds", "3"));
+		maxSeeds = Math.max(minSeeds, Integer.parseInt(
+			automailProperties.getProperty("Tuner_Max_Seeds", "81")));
+		eta = Math.max(2, Integer.parseInt(
+			automailProperties.getProperty("Tuner_Eta", "3")));
+		threads = Integer.parseInt(automailProperties.getProperty(
+			"Tuner_Threads",
+			String.valueOf(Runtime.getRuntime().availableProcessors())));
+		candidates.add(new Candidate(0, new LinkedHashMap<String, String>()));
+		Set<Map<String, String>> drawn = new HashSet<Map<String, String>>();
+		// a small space may have fewer configurations than asked for
+		for (int draws = 0; candidates.size() <= count && draws < 100 * count;
+			draws++) {
+			Map<String, String> settings = space.sample(random);
+			if (fits(settings) && drawn.add(settings)) {
+				candidates.add(new Candidate(candidates.size(), settings));
+			}
+		}
+		for (int i = 0; i < maxSeeds; i++) {
+			seeds.add(1 + random.nextInt(Integer.MAX_VALUE - 1));
+		}
+	}
+
+	/**
+	 * @return whether the building and fleet can run the configuration, a
+	 * 	band needs a robot and a floor of its own
+	 */
+	private boolean fits(Map<String, String> settings) {
+		Properties properties = new Properties();
+		properties.putAll(automailProperties);
+		properties.putAll(settings);
+		int zones = Integer.parseInt(properties.getProperty("Zones", "1"));
+		return zones <= Integer.parseInt(properties.getProperty("Robots")) &&
+			zones <= Integer.parseInt(properties.getProperty("Floors"));
+	}
+
+	public static void main(String[] args) throws IOException,
+		InterruptedException, ExecutionException {
+		Properties automailProperties = Simulation.loadProperties(
+			args.length > 0 ? args[0] : "automail.properties");
+		Tuner tuner = new Tuner(automailProperties);
+		tuner.tune();
+		tuner.printResults();
+	}
+
+	/**
+	 * Race the candidates until one is left or they have run on every seed
+	 */
+	public void tune() throws InterruptedException, ExecutionException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Candidate> racing = new ArrayList<Candidate>(candidates);
+			int rungSeeds = minSeeds;
+			for (int rung = 0; ; rung++) {
+				runUpTo(executor, racing, rungSeeds);
+				racing.sort(BY_MEAN);
+				System.out.printf("Rung %d: %d candidates on %d seeds, best %.2f"
+					+ " %s%n", rung, racing.size(), rungSeeds,
+					racing.get(0).mean(), racing.get(0).name());
+				if (racing.size() == 1 || rungSeeds == maxSeeds) {
+					break;
+				}
+				racing = new ArrayList<Candidate>(racing.subList(0,
+					Math.max(1, (racing.size() + eta - 1) / eta)));
+				rungSeeds = (int) Math.min(maxSeeds, (long) rungSeeds * eta);
+			}
+			best = racing.get(0);
+			// the winner's scores on every seed, and the base's to compare
+			List<Candidate> finalists = new ArrayList<Candidate>();
+			finalists.add(best);
+			if (best != candidates.get(0)) {
+				finalists.add(candidates.get(0));
+			}
+			runUpTo(executor, finalists, maxSeeds);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Run each candidate on the seeds it has not run on yet, up to a number
+	 */
+	private void runUpTo(ExecutorService executor, List<Candidate> racing,
+		int count) throws InterruptedException, ExecutionException {
+		List<Candidate> owners = new ArrayList<Candidate>();
+		List<Future<Double>> running = new ArrayList<Future<Double>>();
+		for (Candidate candidate : racing) {
+			for (int i = candidate.scores.size(); i < count; i++) {
+				Properties properties = new Properties();
+				properties.putAll(automailProperties);
+				properties.putAll(candidate.settings);
+				int seed = seeds.get(i);
+				owners.add(candidate);
+				running.add(executor.submit(() -> score(properties, seed)));
+			}
+		}
+		// in the order submitted, so each candidate's scores are in seed order
+		for (int i = 0; i < running.size(); i++) {
+			Candidate owner = owners.get(i);
+			double score;
+			try {
+				score = running.get(i).get();
+			} catch (ExecutionException e) {
+				if (!(e.getCause() instanceof RuntimeException)) {
+					throw e;
+				}
+				score = Double.POSITIVE_INFINITY;
+				if (owner.failures++ == 0) {
+					owner.failure = e.getCause();
+				}
+			}
+			owner.scores.add(score);
+			runs++;
+		}
+	}
+
+	private static double score(Properties properties, int seed) {
+		return RunProtocol.run(new RunProtocol.Run(seed, seed, properties))
+			.score;
+	}
+
+	public void printResults() {
+		Candidate base = candidates.get(0);
+		System.out.printf("%d candidates, %d runs from Tuner_Seed %s%n",
+			candidates.size(), runs,
+			automailProperties.getProperty("Tuner_Seed", "1"));
+		for (Candidate candidate : candidates) {
+			if (candidate.failures > 0) {
+				System.out.printf("Failed: %d of %d runs of %s, first %s%n",
+					candidate.failures, candidate.scores.size(), candidate.name(),
+					candidate.failure);
+			}
+		}
+		System.out.println("Best: " + best.name());
+		printDistribution("Best", best.scores);
+		if (best != base) {
+			printDistribution("Base", base.scores);
+			MonteCarlo.Estimate difference = new MonteCarlo.Estimate();
+			for (int i = 0; i < best.scores.size(); i++) {
+				difference.add(best.scores.get(i) - base.scores.get(i));
+			}
+			System.out.printf("Difference from base: %.2f +- %.2f (95%%, on the"
+				+ " same seeds)%n", difference.mean, difference.halfWidth(0.95));
+		}
+	}
+
+	private static void printDistribution(String name, List<Double> scores) {
+		List<Double> sorted = new ArrayList<Double>(scores);
+		Collections.sort(sorted);
+		MonteCarlo.Estimate estimate = new MonteCarlo.Estimate();
+		for (double score : scores) {
+			estimate.add(score);
+		}
+		System.out.printf("%s: mean %.2f +- %.2f | sd %.2f | min %.2f | p10 %.2f"
+			+ " | p50 %.2f | p90 %.2f | max %.2f over %d seeds%n", name,
+			estimate.mean, estimate.halfWidth(0.95),
+			Math.sqrt(estimate.variance()), sorted.get(0),
+			percentile(sorted, 10), percentile(sorted, 50),
+			percentile(sorted, 90), sorted.get(sorted.size() - 1),
+			sorted.size());
+	}
+
+	/**
+	 * @return the nearest rank percentile of sorted scores
+	 */
+	private static double percentile(List<Double> sorted, int percent) {
+		int rank = (int) Math.ceil(percent / 100.0 * sorted.size());
+		return sorted.get(Math.max(0, rank - 1));
+	}
+}